@@ -1,5 +1,11 @@
 #!/bin/bash
 rm -rf build
 mkdir -p build/classes
-javac -d build/classes/ src/neuralnet/*.java src/neuralnet/experiments/*.java
-
+javac -d build/classes/ $(ls src/neuralnet/*.java | grep -v VectorKernels) \
+    src/neuralnet/experiments/*.java
+if java --list-modules | grep -q jdk.incubator.vector; then
+  javac --add-modules jdk.incubator.vector -cp build/classes/ \
+      -d build/classes/ src/neuralnet/VectorKernels.java
+else
+  echo "jdk.incubator.vector is not available, using scalar kernels only."
+fi
@@ -0,0 +1,227 @@
+package neuralnet;
+
+public abstract class Activation {
+
+  public static final Activation SIGMOID = new Sigmoid();
+
+  // Linear interpolation in a 2049 entry table of the sigmoid over
+  // [-16, 16], clamped outside it. Maximum absolute error: 3e-6.
+  public static final Activation TABLE_SIGMOID = new TableSigmoid();
+
+  // 0.5 + 0.5 * tanh(x / 2) with tanh replaced by its (7, 6) Pade
+  // approximant, clamped to [0, 1]. Maximum absolute error: 5e-5.
+  public static final Activation RATIONAL_SIGMOID = new RationalSigmoid();
+
+  // 2 / (1 + exp(-2x)) - 1, which costs one exp like the sigmoid where
+  // Math.tanh takes about four times as long.
+  public static final Activation TANH = new Tanh();
+
+  // max(0, x), with no call to exp. The derivative at 0 is taken as 0.
+  public static final Activation RELU = new Relu();
+
+  // x for positive x and 0.01 * x otherwise.
+  public static final Activation LEAKY_RELU = new LeakyRelu(0.01);
+
+  // Output layer only. Normalized exponentials of the layer, shifted by
+  // their maximum so exp never overflows, trained with cross-entropy loss
+  // whose gradient with respect to the layer input is simply t - o.
+  public static final Activation SOFTMAX = new Softmax();
+
+  private String name;
+
+  Activation(String name) {
+    this.name = name;
+  }
+
+  public static Activation forName(String name) {
+    if(name.equals("sigmoid")) return SIGMOID;
+    if(name.equals("table")) return TABLE_SIGMOID;
+    if(name.equals("rational")) return RATIONAL_SIGMOID;
+    if(name.equals("tanh")) return TANH;
+    if(name.equals("relu")) return RELU;
+    if(name.equals("leaky")) return LEAKY_RELU;
+    if(name.equals("softmax")) return SOFTMAX;
+    throw new RuntimeException("Unknown activation: " + name);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  abstract void activate(double[] x, int from, int to);
+
+  abstract void derive(double[] x, double[] delta, int from, int to);
+
+  // Loss of one output o against its target t.
+  double loss(double target, double output) {
+    return Math.pow(target - output, 2.0);
+  }
+
+  private static class Sigmoid extends Activation {
+
+    Sigmoid() {
+      this("sigmoid");
+    }
+
+    Sigmoid(String name) {
+      super(name);
+    }
+
+    void activate(double[] x, int from, int to) {
+      for(int p = from; p < to; p++) {
+        x[p] = 1.0 / (1.0 + Math.exp(-x[p]));
+      }
+    }
+
+    void derive(double[] x, double[] delta, int from, int to) {
+      for(int p = from; p < to; p++) {
+        double o = x[p];
+        delta[p] = o * (1.0 - o) * delta[p];
+      }
+    }
+  }
+
+  private static final class TableSigmoid extends Sigmoid {
+
+    private static final double RANGE = 16.0;
+    private static final int STEPS = 2048;
+    private static final double SCALE = STEPS / (2.0 * RANGE);
+
+    private final double[] table = new double[STEPS + 2];
+
+    TableSigmoid() {
+      super("table");
+      for(int i = 0; i <= STEPS; i++) {
+        table[i] = 1.0 / (1.0 + Math.exp(-(i / SCALE - RANGE)));
+      }
+      table[STEPS + 1] = table[STEPS];
+    }
+
+    void activate(double[] x, int from, int to) {
+      double[] table = this.table;
+      for(int p = from; p < to; p++) {
+        double position = (Math.max(-RANGE, Math.min(RANGE, x[p])) + RANGE)
+            * SCALE;
+        int index = (int) position;
+        double fraction = position - index;
+        x[p] = table[index] + (table[index + 1] - table[index]) * fraction;
+      }
+    }
+  }
+
+  private static final class Tanh extends Activation {
+
+    Tanh() {
+      super("tanh");
+    }
+
+    void activate(double[] x, int from, int to) {
+      for(int p = from; p < to; p++) {
+        x[p] = 2.0 / (1.0 + Math.exp(-2.0 * x[p])) - 1.0;
+      }
+    }
+
+    void derive(double[] x, double[] delta, int from, int to) {
+      for(int p = from; p < to; p++) {
+        double o = x[p];
+        delta[p] = (1.0 - o * o) * delta[p];
+      }
+    }
+  }
+
+  private static final class Relu extends Activation {
+
+    Relu() {
+      super("relu");
+    }
+
+    void activate(double[] x, int from, int to) {
+      for(int p = from; p < to; p++) {
+        x[p] = Math.max(0.0, x[p]);
+      }
+    }
+
+    void derive(double[] x, double[] delta, int from, int to) {
+      for(int p = from; p < to; p++) {
+        delta[p] = x[p] > 0.0 ? delta[p] : 0.0;
+      }
+    }
+  }
+
+  private static final class LeakyRelu extends Activation {
+
+    private double slope;
+
+    LeakyRelu(double slope) {
+      super("leaky");
+      this.slope = slope;
+    }
+
+    void activate(double[] x, int from, int to) {
+      for(int p = from; p < to; p++) {
+        double v = x[p];
+        x[p] = v > 0.0 ? v : slope * v;
+      }
+    }
+
+    // The output has the sign of the input, so it selects the slope.
+    void derive(double[] x, double[] delta, int from, int to) {
+      for(int p = from; p < to; p++) {
+        delta[p] = x[p] > 0.0 ? delta[p] : slope * delta[p];
+      }
+    }
+  }
+
+  private static final class Softmax extends Activation {
+
+    private static final double MIN_OUTPUT = 1e-300;
+
+    Softmax() {
+      super("softmax");
+    }
+
+    void activate(double[] x, int from, int to) {
+      double max = Double.NEGATIVE_INFINITY;
+      for(int p = from; p < to; p++) {
+        max = Math.max(max, x[p]);
+      }
+      double sum = 0.0;
+      for(int p = from; p < to; p++) {
+        double e = Math.exp(x[p] - max);
+        x[p] = e;
+        sum += e;
+      }
+      double inverse = 1.0 / sum;
+      for(int p = from; p < to; p++) {
+        x[p] *= inverse;
+      }
+    }
+
+    void derive(double[] x, double[] delta, int from, int to) {
+    }
+
+    double loss(double target, double output) {
+      return target == 0.0 ?
+          0.0 : -target * Math.log(Math.max(output, MIN_OUTPUT));
+    }
+  }
+
+  private static final class RationalSigmoid extends Sigmoid {
+
+    private static final double CLAMP = 9.94;
+
+    RationalSigmoid() {
+      super("rational");
+    }
+
+    void activate(double[] x, int from, int to) {
+      for(int p = from; p < to; p++) {
+        double t = 0.5 * Math.max(-CLAMP, Math.min(CLAMP, x[p]));
+        double t2 = t * t;
+        double tanh = t * (135135.0 + t2 * (17325.0 + t2 * (378.0 + t2))) /
+            (135135.0 + t2 * (62370.0 + t2 * (3150.0 + t2 * 28.0)));
+        x[p] = Math.max(0.0, Math.min(1.0, 0.5 + 0.5 * tanh));
+      }
+    }
+  }
+}
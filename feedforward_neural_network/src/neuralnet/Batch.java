@@ -0,0 +1,47 @@
+package neuralnet;
+
+class Batch {
+
+  private int capacity;
+  private double[][] x;
+  private double[][] delta;
+  private double[][] gradient;
+
+  Batch(int[] size, int capacity) {
+    this(size, capacity, true);
+  }
+
+  Batch(int[] size, int capacity, boolean training) {
+    this.capacity = capacity;
+    int n = size.length;
+    x = new double[n][];
+    delta = new double[n][];
+    gradient = new double[n][];
+    for(int i = 0; i < n; i++) {
+      x[i] = new double[capacity * size[i]];
+      if(!training) {
+        delta[i] = new double[0];
+        gradient[i] = new double[0];
+        continue;
+      }
+      delta[i] = new double[capacity * size[i]];
+      gradient[i] = new double[i == 0 ? 0 : size[i] * size[i - 1]];
+    }
+  }
+
+  int getCapacity() {
+    return capacity;
+  }
+
+  double[] getX(int layer) {
+    return x[layer];
+  }
+
+  double[] getDelta(int layer) {
+    return delta[layer];
+  }
+
+  double[] getGradient(int layer) {
+    return gradient[layer];
+  }
+}
@@ -0,0 +1,134 @@
+package neuralnet;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+// Writes training snapshots to a file on a background thread. The training
+// thread encodes a snapshot into one of two buffers and hands it over, so
+// it only pays for the copy. While one buffer is being written the next
+// snapshot goes into the other; if both are still busy that snapshot is
+// skipped rather than waited for, unless it is taken with take. Each write goes to a temporary file that
+// then replaces the checkpoint, so a crash mid-write keeps the previous one.
+class Checkpointer {
+
+  private static final int BUFFERS = 2;
+
+  private File file;
+  private BlockingQueue <ByteBuffer> free;
+  private ExecutorService writer;
+  private volatile IOException failure;
+
+  Checkpointer(File file) {
+    this.file = file;
+    free = new ArrayBlockingQueue <ByteBuffer> (BUFFERS);
+    for(int i = 0; i < BUFFERS; i++) {
+      free.add(ByteBuffer.allocate(0));
+    }
+    writer = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "checkpoint-writer");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+  }
+
+  // Returns an empty buffer of at least the given size, or null if both
+  // are still being written.
+  ByteBuffer acquire(long bytes) {
+    checkFailure();
+    ByteBuffer buffer = free.poll();
+    return buffer == null ? null : prepare(buffer, bytes);
+  }
+
+  // Like acquire, but waits for a buffer to be written if both are busy.
+  ByteBuffer take(long bytes) {
+    checkFailure();
+    try {
+      return prepare(free.take(), bytes);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while checkpointing.", e);
+    }
+  }
+
+  private ByteBuffer prepare(ByteBuffer buffer, long bytes) {
+    if(buffer.capacity() < bytes) {
+      buffer = ByteBuffer.allocate((int) bytes);
+    }
+    buffer.clear();
+    return buffer;
+  }
+
+  // Writes a filled and flipped buffer from acquire and then releases it.
+  void write(final ByteBuffer buffer) {
+    writer.execute(new Runnable() {
+      public void run() {
+        try {
+          writeFile(buffer);
+        }
+        catch(IOException e) {
+          failure = e;
+        }
+        finally {
+          free.add(buffer);
+        }
+      }
+    });
+  }
+
+  // Waits for the pending writes.
+  void close() {
+    writer.shutdown();
+    try {
+      writer.awaitTermination(Long.MAX_VALUE, TimeUnit.NANOSECONDS);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while checkpointing.", e);
+    }
+    checkFailure();
+  }
+
+  private void writeFile(ByteBuffer buffer) throws IOException {
+    File temporary = new File(file.getPath() + ".tmp");
+    FileChannel channel = FileChannel.open(
+        temporary.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE);
+    try {
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      channel.force(true);
+    }
+    finally {
+      channel.close();
+    }
+    Files.move(temporary.toPath(),
+               file.toPath(),
+               StandardCopyOption.REPLACE_EXISTING,
+               StandardCopyOption.ATOMIC_MOVE);
+  }
+
+  private void checkFailure() {
+    if(failure != null) {
+      throw new RuntimeException("Writing checkpoint failed.", failure);
+    }
+  }
+}
@@ -0,0 +1,50 @@
+package neuralnet;
+
+public class Configuration {
+
+  private int[] layers;
+  private double learningRate;
+  private double momentum;
+  private int batchSize;
+
+  public Configuration(int[] layers,
+                       double learningRate,
+                       double momentum,
+                       int batchSize) {
+    this.layers = layers;
+    this.learningRate = learningRate;
+    this.momentum = momentum;
+    this.batchSize = batchSize;
+  }
+
+  public int[] getLayers() {
+    return layers;
+  }
+
+  public double getLearningRate() {
+    return learningRate;
+  }
+
+  public double getMomentum() {
+    return momentum;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    for(int i = 0; i < layers.length; i++) {
+      if(i > 0) result.append("-");
+      result.append(layers[i]);
+    }
+    result.append(",");
+    result.append(learningRate);
+    result.append(",");
+    result.append(momentum);
+    result.append(",");
+    result.append(batchSize);
+    return result.toString();
+  }
+}
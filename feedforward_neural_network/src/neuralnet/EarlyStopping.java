@@ -0,0 +1,41 @@
+package neuralnet;
+
+import java.util.List;
+
+public class EarlyStopping {
+
+  private List <Example> validationSet;
+  private int evaluationInterval;
+  private int patience;
+  private double minDelta;
+
+  public EarlyStopping(List <Example> validationSet,
+                       int evaluationInterval,
+                       int patience,
+                       double minDelta) {
+    if(evaluationInterval < 1 || patience < 1) {
+      throw new RuntimeException(
+          "Evaluation interval and patience must be positive.");
+    }
+    this.validationSet = validationSet;
+    this.evaluationInterval = evaluationInterval;
+    this.patience = patience;
+    this.minDelta = minDelta;
+  }
+
+  public List <Example> getValidationSet() {
+    return validationSet;
+  }
+
+  public int getEvaluationInterval() {
+    return evaluationInterval;
+  }
+
+  public int getPatience() {
+    return patience;
+  }
+
+  public double getMinDelta() {
+    return minDelta;
+  }
+}
@@ -0,0 +1,28 @@
+package neuralnet;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("neuralnet.Epoch")
+@Label("Training Epoch")
+@Category("Neural Network")
+@Description("One pass of FeedforwardNeuralNetwork.train over its examples")
+class EpochEvent extends jdk.jfr.Event {
+
+  @Label("Epoch")
+  int epoch;
+
+  @Label("Examples")
+  int examples;
+
+  @Label("Examples per Second")
+  double examplesPerSecond;
+
+  @Label("Training Error")
+  double trainingError;
+
+  @Label("Weight Update Norm")
+  double updateNorm;
+}
@@ -0,0 +1,62 @@
+package neuralnet;
+
+public class EpochMetrics {
+
+  private int epoch;
+  private int examples;
+  private long nanos;
+  private double trainingError;
+  private double[] updateNorms;
+
+  public EpochMetrics(int epoch,
+                      int examples,
+                      long nanos,
+                      double trainingError,
+                      double[] updateNorms) {
+    this.epoch = epoch;
+    this.examples = examples;
+    this.nanos = nanos;
+    this.trainingError = trainingError;
+    this.updateNorms = updateNorms;
+  }
+
+  public int getEpoch() {
+    return epoch;
+  }
+
+  public int getExamples() {
+    return examples;
+  }
+
+  public long getNanos() {
+    return nanos;
+  }
+
+  public double getExamplesPerSecond() {
+    return examples * 1e9 / Math.max(nanos, 1L);
+  }
+
+  // Sum of squared output errors, measured before each example's update.
+  public double getTrainingError() {
+    return trainingError;
+  }
+
+  // L2 norm of the change of layer i's weights over the epoch. Layer 0 has
+  // no weights and always reports 0.
+  public double getUpdateNorm(int layer) {
+    return updateNorms[layer];
+  }
+
+  public double getUpdateNorm() {
+    double sum = 0.0;
+    for(double norm : updateNorms) {
+      sum += norm * norm;
+    }
+    return Math.sqrt(sum);
+  }
+
+  public String toString() {
+    return epoch + "," + (long) getExamplesPerSecond() + "," +
+        trainingError + "," + getUpdateNorm();
+  }
+}
@@ -2,20 +2,85 @@ package neuralnet;
 
 public class Example {
 
+  private int inputs;
   private double[] input;
+  private int[] indices;
+  private double[] values;
   private double[] output;
 
   public Example(double[] input, double[] output) {
+    this.inputs = input == null ? 0 : input.length;
     this.input = input;
     this.output = output;
   }
 
+  // Sparse input of the given size: values[p] is input[indices[p]] and all
+  // other inputs are 0. The indices must be strictly increasing.
+  public Example(int inputs, int[] indices, double[] values, double[] output) {
+    if(indices.length != values.length) {
+      throw new RuntimeException(
+          "Sparse indices and values must have the same length.");
+    }
+    for(int p = 0; p < indices.length; p++) {
+      if(indices[p] < 0 || indices[p] >= inputs ||
+         (p > 0 && indices[p] <= indices[p - 1])) {
+        throw new RuntimeException(
+            "Sparse indices must be increasing and within the input size.");
+      }
+    }
+    this.inputs = inputs;
+    this.indices = indices;
+    this.values = values;
+    this.output = output;
+  }
+
+  public static Example sparse(double[] input, double[] output) {
+    int count = 0;
+    for(double value : input) {
+      if(value != 0.0) count++;
+    }
+    int[] indices = new int[count];
+    double[] values = new double[count];
+    count = 0;
+    for(int i = 0; i < input.length; i++) {
+      if(input[i] != 0.0) {
+        indices[count] = i;
+        values[count] = input[i];
+        count++;
+      }
+    }
+    return new Example(input.length, indices, values, output);
+  }
+
+  public int getInputSize() {
+    return inputs;
+  }
+
+  public boolean isSparse() {
+    return indices != null;
+  }
+
+  public int[] getIndices() {
+    return indices;
+  }
+
+  public double[] getValues() {
+    return values;
+  }
+
+  // A sparse example returns a new dense copy on every call.
   public double[] getInput() {
-    return input;
+    if(input != null) {
+      return input;
+    }
+    double[] dense = new double[inputs];
+    for(int p = 0; p < indices.length; p++) {
+      dense[indices[p]] = values[p];
+    }
+    return dense;
   }
 
   public double[] getOutput() {
     return output;
   }
 }
-
@@ -0,0 +1,6 @@
+package neuralnet;
+
+public interface ExampleParser {
+
+  Example parse(String record);
+}
@@ -0,0 +1,137 @@
+package neuralnet;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+// Reads training examples from a file one chunk at a time. Each chunk is
+// shuffled on its own, and the next one is read and parsed on a background
+// thread while the current one trains, so at most two chunks are held in
+// memory. The reader, the random generator and the parser are only used
+// by that thread.
+public class ExampleStream implements Closeable {
+
+  private File file;
+  private ExampleParser parser;
+  private int limit;
+  private int chunkSize;
+  private Random random;
+  private BufferedReader reader;
+  private int read;
+  private ExecutorService prefetcher;
+  private Future <List <Example> > next;
+
+  public ExampleStream(File file,
+                       ExampleParser parser,
+                       int chunkSize,
+                       int seed) {
+    this(file, parser, Integer.MAX_VALUE, chunkSize, seed);
+  }
+
+  public ExampleStream(File file,
+                       ExampleParser parser,
+                       int limit,
+                       int chunkSize,
+                       int seed) {
+    if(chunkSize < 1) {
+      throw new RuntimeException("Chunk size must be positive.");
+    }
+    this.file = file;
+    this.parser = parser;
+    this.limit = limit;
+    this.chunkSize = chunkSize;
+    random = new Random(seed);
+    prefetcher = Executors.newSingleThreadExecutor(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "example-prefetch");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    next = prefetch();
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  // Returns the next chunk of the current epoch, or null once the epoch is
+  // complete. The call after that starts the next epoch.
+  public List <Example> nextChunk() {
+    List <Example> chunk = await(next);
+    next = prefetch();
+    return chunk;
+  }
+
+  public void close() {
+    Future <List <Example> > closing = prefetcher.submit(
+        new Callable <List <Example> > () {
+          public List <Example> call() throws IOException {
+            if(reader != null) {
+              reader.close();
+              reader = null;
+            }
+            return null;
+          }
+        });
+    prefetcher.shutdown();
+    await(closing);
+  }
+
+  private Future <List <Example> > prefetch() {
+    return prefetcher.submit(new Callable <List <Example> > () {
+      public List <Example> call() throws IOException {
+        return readChunk();
+      }
+    });
+  }
+
+  private List <Example> readChunk() throws IOException {
+    if(reader == null) {
+      reader = new BufferedReader(new FileReader(file));
+      read = 0;
+    }
+
+    List <Example> chunk = new ArrayList <Example> ();
+    String line;
+    while(chunk.size() < chunkSize && read < limit &&
+          (line = reader.readLine()) != null) {
+      if(line.isEmpty()) continue;
+      chunk.add(parser.parse(line));
+      read++;
+    }
+    if(chunk.isEmpty()) {
+      reader.close();
+      reader = null;
+      return null;
+    }
+    Collections.shuffle(chunk, random);
+    return chunk;
+  }
+
+  private List <Example> await(Future <List <Example> > future) {
+    try {
+      return future.get();
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while reading examples.", e);
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Reading examples failed.", e.getCause());
+    }
+  }
+}
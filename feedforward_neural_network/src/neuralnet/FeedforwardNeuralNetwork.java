@@ -1,46 +1,397 @@
 package neuralnet;
 
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+import java.util.Arrays;
 import java.util.List;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+public class FeedforwardNeuralNetwork implements NeuralNetwork {
 
-public class FeedforwardNeuralNetwork {
+  private static final int BLOCK = 32;
+  private static final int INFERENCE_BATCH = 64;
+  private static final Kernels KERNELS = Kernels.INSTANCE;
+  private static final int MAGIC = 0x46464e4e;
+  private static final int VERSION = 5;
+
+  // What follows the weights in a model file. Version 4 added the
+  // training state: the optimizer, its step and epoch counters and all of
+  // its per-weight state. Version 5 added the optimizer's parameters and
+  // the early stopping state: the best network so far and its error.
+  private static final byte WEIGHTS = 0;
+  private static final byte WITH_MOMENTUM = 1;
+  private static final byte TRAINING_STATE = 2;
+  private static final byte EARLY_STOPPING = 3;
   
   private int n;
-  private double[][] x;
-  private double[][] delta;
-  private double[][][] weight;
-  private double[][][] previousWeightDelta;
+  private int[] size;
+  private int[] offset;
+  private Activation[] activation;
+  private double[] x;
+  private double[] delta;
+  private double[][] weight;
+  private double[][] previousWeightDelta;
+  private ThreadLocal <double[]> scratch;
+  private ThreadLocal <Batch> inferenceBatch;
+  private LazyMomentum lazyMomentum;
   private Random random;
+  private TrainingListener listener;
+  private int epochs;
+  private Optimizer optimizer;
+  private double[][][] optimizerState;
+  private long step;
+  private File checkpointFile;
+  private int checkpointInterval;
+  private EarlyStoppingState earlyStoppingState;
 
   public FeedforwardNeuralNetwork(int[] layers) {
     this(layers, 42);
   }
 
   public FeedforwardNeuralNetwork(int[] layers, int seed) {
+    this(layers, seed, Activation.SIGMOID);
+  }
+
+  public FeedforwardNeuralNetwork(int[] layers,
+                                  int seed,
+                                  Activation activation) {
+    this(layers, seed, activation, activation);
+  }
+
+  public FeedforwardNeuralNetwork(int[] layers,
+                                  int seed,
+                                  Activation activation,
+                                  Activation outputActivation) {
+    this(layers, seed, uniform(layers.length, activation, outputActivation));
+  }
+
+  // activation[i] is the activation of layer i + 1, so the last one is the
+  // output layer's.
+  public FeedforwardNeuralNetwork(int[] layers,
+                                  int seed,
+                                  Activation[] activation) {
+    this(layers, activation);
+    random = new Random(seed);
+    for(int i = 0; i < weight.length; i++) {
+      for(int j = 0; j < weight[i].length; j++) {
+        weight[i][j] = randomScalar();
+      }
+    }
+  }
+
+  private FeedforwardNeuralNetwork(int[] layers, Activation[] activation) {
+    if(activation.length != layers.length - 1) {
+      throw new RuntimeException("Wrong number of activations.");
+    }
+    for(int i = 0; i < activation.length - 1; i++) {
+      if(activation[i] == Activation.SOFTMAX) {
+        throw new RuntimeException(
+            "Softmax can only be used for the output layer.");
+      }
+    }
+    this.activation = activation.clone();
     n = layers.length;
-    x = new double[n][];
-    delta = new double[n][];
-    weight = new double[n][][];
-    previousWeightDelta = new double[n][][];
+    size = new int[n];
+    offset = new int[n];
+    weight = new double[n][];
+    previousWeightDelta = new double[n][];
+    int total = 0;
     for(int i = 0; i < n; i++) {
-      x[i] = new double[layers[i] + 1];
-      delta[i] = new double[layers[i] + 1];
+      size[i] = layers[i] + 1;
+      offset[i] = total;
+      total += size[i];
       if(i == 0) {
-        weight[i] = new double[0][0];
-        previousWeightDelta[i] = new double[0][0];
+        weight[i] = new double[0];
+        previousWeightDelta[i] = new double[0];
         continue;
       }
-      weight[i] = new double[layers[i] + 1][layers[i - 1] + 1];
-      previousWeightDelta[i] = new double[layers[i] + 1][layers[i - 1] + 1];
+      weight[i] = new double[size[i] * size[i - 1]];
+      previousWeightDelta[i] = new double[size[i] * size[i - 1]];
+    }
+    x = new double[total];
+    delta = new double[total];
+    lazyMomentum = new LazyMomentum(size[1], size[0]);
+    optimizer = Optimizer.MOMENTUM;
+    optimizerState = newOptimizerState(previousWeightDelta);
+    scratch = new ThreadLocal <double[]> () {
+      protected double[] initialValue() {
+        return new double[x.length];
+      }
+    };
+    inferenceBatch = new ThreadLocal <Batch> () {
+      protected Batch initialValue() {
+        return new Batch(size, INFERENCE_BATCH, false);
+      }
+    };
+  }
+
+  // Copies the weights into the network's own arrays, so each process that
+  // loads a model holds a private copy of it; map shares one. Throws an
+  // IOException for a file that is truncated or not a model file.
+  public static FeedforwardNeuralNetwork load(File file) throws IOException {
+    FileChannel channel = FileChannel.open(
+        file.toPath(), StandardOpenOption.READ);
+    try {
+      MappedByteBuffer buffer = channel.map(
+          FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      Header header = readHeader(buffer);
+      byte contents = header.contents;
+      long weights = header.weights;
+      require(buffer, 8 * weights * (contents == WITH_MOMENTUM ? 2 : 1));
+      FeedforwardNeuralNetwork net =
+          new FeedforwardNeuralNetwork(header.layers, header.activation);
+      for(int i = 1; i < net.n; i++) {
+        buffer.asDoubleBuffer().get(net.weight[i]);
+        buffer.position(buffer.position() + 8 * net.weight[i].length);
+      }
+      if(contents == WITH_MOMENTUM) {
+        for(int i = 1; i < net.n; i++) {
+          buffer.asDoubleBuffer().get(net.previousWeightDelta[i]);
+          buffer.position(
+              buffer.position() + 8 * net.previousWeightDelta[i].length);
+        }
+      }
+      else if(contents != WEIGHTS) {
+        net.setOptimizer(readOptimizer(buffer, header.version));
+        require(buffer, 8 + 4);
+        net.step = buffer.getLong();
+        net.epochs = buffer.getInt();
+        require(buffer, 8 * weights * net.optimizer.getStateSize());
+        readState(buffer, net.optimizerState);
+      }
+      if(contents == EARLY_STOPPING) {
+        EarlyStoppingState best =
+            new EarlyStoppingState(net.weight, net.optimizerState);
+        require(buffer, 1 + 8 + 4 + 8 + 4);
+        best.stopped = buffer.get() != 0;
+        best.error = buffer.getDouble();
+        best.evaluationsWithoutImprovement = buffer.getInt();
+        best.step = buffer.getLong();
+        best.epochs = buffer.getInt();
+        require(buffer, 8 * weights * (1 + net.optimizer.getStateSize()));
+        for(int i = 1; i < net.n; i++) {
+          buffer.asDoubleBuffer().get(best.weight[i]);
+          buffer.position(buffer.position() + 8 * best.weight[i].length);
+        }
+        readState(buffer, best.optimizerState);
+        net.earlyStoppingState = best;
+      }
+      return net;
+    }
+    finally {
+      channel.close();
     }
+  }
 
-    random = new Random(seed);
-    for(int i = 0; i < weight.length; i++) {
-      for(int j = 0; j < weight[i].length; j++) {
-        for(int k = 0; k < weight[i][j].length; k++) {
-          weight[i][j][k] = randomScalar();
+  // Reads the weights straight from the mapped file, so every process that
+  // maps the same model shares one copy of it in the page cache. The
+  // mapping stays open as long as the returned network is reachable.
+  public static MappedNeuralNetwork map(File file) throws IOException {
+    FileChannel channel = FileChannel.open(
+        file.toPath(), StandardOpenOption.READ);
+    try {
+      MappedByteBuffer buffer = channel.map(
+          FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      Header header = readHeader(buffer);
+      int first = buffer.position();
+      require(buffer, 8 * header.weights);
+      // Checks that the rest of the file is complete, without reading it.
+      buffer.position(first + (int) (8 * header.weights));
+      if(header.contents == WITH_MOMENTUM) {
+        require(buffer, 8 * header.weights);
+      }
+      else if(header.contents != WEIGHTS) {
+        int stateSize = readOptimizer(buffer, header.version).getStateSize();
+        long tail = 8 + 4 + 8 * header.weights * stateSize;
+        if(header.contents == EARLY_STOPPING) {
+          tail += 1 + 8 + 4 + 8 + 4 + 8 * header.weights * (1 + stateSize);
         }
+        require(buffer, tail);
       }
+      return new MappedNeuralNetwork(
+          header.layers, header.activation, buffer, first);
+    }
+    finally {
+      channel.close();
+    }
+  }
+
+  public void save(File file) throws IOException {
+    save(file, false);
+  }
+
+  public void save(File file, boolean includeMomentum) throws IOException {
+    byte contents = includeMomentum ? WITH_MOMENTUM : WEIGHTS;
+    ByteBuffer buffer = ByteBuffer.allocate((int) encodedSize(contents));
+    encode(contents, buffer);
+
+    FileChannel channel = FileChannel.open(
+        file.toPath(),
+        StandardOpenOption.CREATE,
+        StandardOpenOption.TRUNCATE_EXISTING,
+        StandardOpenOption.WRITE);
+    try {
+      while(buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+    }
+    finally {
+      channel.close();
+    }
+  }
+
+  // Every interval epochs, training writes the weights and the complete
+  // optimizer state to the file without waiting for the disk. Loading that
+  // file and training the remaining iterations - getEpochs() epochs gives
+  // the same network as an uninterrupted run. Training with early stopping
+  // also writes its own state, and only writes after evaluations, ending
+  // with the network it rolled back to. A null file turns it off.
+  public void setCheckpointing(File file, int interval) {
+    if(file != null && interval < 1) {
+      throw new RuntimeException("Checkpoint interval must be positive.");
+    }
+    checkpointFile = file;
+    checkpointInterval = interval;
+  }
+
+  public int getInputSize() {
+    return size[0] - 1;
+  }
+
+  public int getOutputSize() {
+    return size[n - 1] - 1;
+  }
+
+  // Epochs trained so far, including those before a checkpoint was loaded.
+  public int getEpochs() {
+    return epochs;
+  }
+
+  private long encodedSize(byte contents) throws IOException {
+    long bytes = 4 * (3 + n) + 1;
+    for(int i = 0; i < n - 1; i++) {
+      bytes += 4 + activation[i].getName().getBytes("US-ASCII").length;
+    }
+    for(int i = 1; i < n; i++) {
+      bytes += 8 * weight[i].length;
+      if(contents == WITH_MOMENTUM) {
+        bytes += 8 * previousWeightDelta[i].length;
+      }
+      else if(contents != WEIGHTS) {
+        bytes += 8 * optimizerState[i].length * weight[i].length;
+      }
+      if(contents == EARLY_STOPPING) {
+        bytes += 8 * (1 + optimizerState[i].length) * weight[i].length;
+      }
+    }
+    if(contents == TRAINING_STATE || contents == EARLY_STOPPING) {
+      bytes += 4 + optimizer.getName().getBytes("US-ASCII").length;
+      bytes += 4 + 8 * optimizer.getParameters().length + 8 + 4;
+    }
+    if(contents == EARLY_STOPPING) {
+      bytes += 1 + 8 + 4 + 8 + 4;
+    }
+    return bytes;
+  }
+
+  // Fills the buffer from its position and flips it.
+  private void encode(byte contents, ByteBuffer buffer) throws IOException {
+    byte[][] name = new byte[n - 1][];
+    for(int i = 0; i < n - 1; i++) {
+      name[i] = activation[i].getName().getBytes("US-ASCII");
+    }
+    buffer.putInt(MAGIC);
+    buffer.putInt(VERSION);
+    buffer.putInt(n);
+    for(int i = 0; i < n; i++) {
+      buffer.putInt(size[i] - 1);
+    }
+    for(int i = 0; i < n - 1; i++) {
+      buffer.putInt(name[i].length);
+      buffer.put(name[i]);
+    }
+    buffer.put(contents);
+    for(int i = 1; i < n; i++) {
+      buffer.asDoubleBuffer().put(weight[i]);
+      buffer.position(buffer.position() + 8 * weight[i].length);
+    }
+    if(contents == WITH_MOMENTUM) {
+      for(int i = 1; i < n; i++) {
+        buffer.asDoubleBuffer().put(previousWeightDelta[i]);
+        buffer.position(buffer.position() + 8 * previousWeightDelta[i].length);
+      }
+    }
+    else if(contents != WEIGHTS) {
+      byte[] optimizerName = optimizer.getName().getBytes("US-ASCII");
+      buffer.putInt(optimizerName.length);
+      buffer.put(optimizerName);
+      double[] parameters = optimizer.getParameters();
+      buffer.putInt(parameters.length);
+      buffer.asDoubleBuffer().put(parameters);
+      buffer.position(buffer.position() + 8 * parameters.length);
+      buffer.putLong(step);
+      buffer.putInt(epochs);
+      writeState(buffer, optimizerState);
+    }
+    if(contents == EARLY_STOPPING) {
+      EarlyStoppingState best = earlyStoppingState;
+      buffer.put((byte) (best.stopped ? 1 : 0));
+      buffer.putDouble(best.error);
+      buffer.putInt(best.evaluationsWithoutImprovement);
+      buffer.putLong(best.step);
+      buffer.putInt(best.epochs);
+      for(int i = 1; i < n; i++) {
+        buffer.asDoubleBuffer().put(best.weight[i]);
+        buffer.position(buffer.position() + 8 * best.weight[i].length);
+      }
+      writeState(buffer, best.optimizerState);
+    }
+    buffer.flip();
+  }
+
+  private static void writeState(ByteBuffer buffer, double[][][] state) {
+    for(int i = 1; i < state.length; i++) {
+      for(double[] slot : state[i]) {
+        buffer.asDoubleBuffer().put(slot);
+        buffer.position(buffer.position() + 8 * slot.length);
+      }
+    }
+  }
+
+  private static void readState(ByteBuffer buffer, double[][][] state) {
+    for(int i = 1; i < state.length; i++) {
+      for(double[] slot : state[i]) {
+        buffer.asDoubleBuffer().get(slot);
+        buffer.position(buffer.position() + 8 * slot.length);
+      }
+    }
+  }
+
+  // Copies the state into a free buffer for the writer thread. If the
+  // previous two are still being written, waits for one when asked to and
+  // otherwise skips the checkpoint.
+  private void checkpoint(Checkpointer checkpointer, boolean wait) {
+    byte contents =
+        earlyStoppingState == null ? TRAINING_STATE : EARLY_STOPPING;
+    try {
+      long bytes = encodedSize(contents);
+      ByteBuffer buffer = wait ?
+          checkpointer.take(bytes) : checkpointer.acquire(bytes);
+      if(buffer != null) {
+        encode(contents, buffer);
+        checkpointer.write(buffer);
+      }
+    }
+    catch(IOException e) {
+      throw new RuntimeException("Encoding checkpoint failed.", e);
     }
   }
 
@@ -48,17 +399,323 @@ public class FeedforwardNeuralNetwork {
                     int iterations,
                     double learningRate,
                     double momentum) {
-    while(iterations-- > 0) {
-      for(Example example : examples) {
-        forwardPropagate(example.getInput());
-        backwardPropagateDelta(example.getOutput());
-        updateWeights(learningRate, momentum);
+    train(examples, iterations, learningRate, momentum, 1);
+  }
+
+  public void train(List <Example> examples,
+                    int iterations,
+                    double learningRate,
+                    double momentum,
+                    int batchSize) {
+    train(examples, iterations, learningRate, momentum, batchSize, 1);
+  }
+
+  // Threads split each mini-batch, so more than one needs a batch size
+  // above 1; trainAsynchronously parallelizes per-example training.
+  public void train(List <Example> examples,
+                    int iterations,
+                    double learningRate,
+                    double momentum,
+                    int batchSize,
+                    int threads) {
+    train(examples, null, iterations, learningRate, momentum, batchSize,
+          threads);
+  }
+
+  // Mini-batches do not cross chunk boundaries.
+  public void train(ExampleStream stream,
+                    int iterations,
+                    double learningRate,
+                    double momentum,
+                    int batchSize,
+                    int threads) {
+    train(null, stream, iterations, learningRate, momentum, batchSize,
+          threads);
+  }
+
+  private void train(List <Example> examples,
+                     ExampleStream stream,
+                     int iterations,
+                     double learningRate,
+                     double momentum,
+                     int batchSize,
+                     int threads) {
+    earlyStoppingState = null;
+    Checkpointer checkpointer = checkpointFile == null ?
+        null : new Checkpointer(checkpointFile);
+    try {
+      train(examples, stream, iterations, learningRate, momentum, batchSize,
+            threads, checkpointer);
+    }
+    finally {
+      if(checkpointer != null) {
+        checkpointer.close();
+      }
+    }
+  }
+
+  // Checkpoints every checkpointInterval epochs if checkpointer is not null.
+  private void train(List <Example> examples,
+                     ExampleStream stream,
+                     int iterations,
+                     double learningRate,
+                     double momentum,
+                     int batchSize,
+                     int threads,
+                     Checkpointer checkpointer) {
+    if(batchSize < 1) {
+      throw new RuntimeException("Batch size must be positive.");
+    }
+    if(threads < 1) {
+      throw new RuntimeException("Number of threads must be positive.");
+    }
+    if(threads > 1 && batchSize == 1) {
+      throw new RuntimeException(
+          "Training on several threads needs a batch size above 1.");
+    }
+
+    int capacity = Math.min(
+        batchSize, stream == null ? examples.size() : stream.getChunkSize());
+    Batch batch = null;
+    Batch[] shards = null;
+    ForkJoinPool pool = null;
+    if(batchSize > 1 && threads == 1) {
+      batch = new Batch(size, capacity);
+    }
+    else if(batchSize > 1) {
+      shards = new Batch[threads];
+      for(int i = 0; i < threads; i++) {
+        shards[i] = new Batch(size, (capacity + threads - 1) / threads);
+      }
+      pool = new ForkJoinPool(threads);
+    }
+
+    double[][] epochStart = null;
+    try {
+      while(iterations-- > 0) {
+        EpochEvent event = new EpochEvent();
+        boolean reporting = listener != null || event.isEnabled();
+        long start = 0L;
+        if(reporting) {
+          if(epochStart == null) {
+            epochStart = new double[n][];
+            for(int i = 0; i < n; i++) {
+              epochStart[i] = new double[weight[i].length];
+            }
+          }
+          copyLayers(weight, epochStart);
+          event.begin();
+          start = System.nanoTime();
+        }
+
+        double error = 0.0;
+        int count = 0;
+        List <Example> chunk = stream == null ? examples : stream.nextChunk();
+        while(chunk != null) {
+          if(batchSize == 1) {
+            error += trainPass(chunk, learningRate, momentum);
+          }
+          else {
+            error += trainPass(chunk, learningRate, momentum, batchSize,
+                               batch, shards, pool);
+          }
+          count += chunk.size();
+          chunk = stream == null ? null : stream.nextChunk();
+        }
+        epochs++;
+
+        if(reporting) {
+          reportEpoch(event, start, count, error, epochStart);
+        }
+        if(checkpointer != null && epochs % checkpointInterval == 0) {
+          checkpoint(checkpointer, false);
+        }
+      }
+    }
+    finally {
+      if(pool != null) {
+        pool.shutdown();
+      }
+    }
+  }
+
+  // Returns the number of epochs run. The network, including its optimizer
+  // state and epoch counter, is left as it was after the best evaluation.
+  // After loading one of its checkpoints, this continues the same run, and
+  // after loading its last one it trains no further and returns 0.
+  public int train(List <Example> examples,
+                   int iterations,
+                   double learningRate,
+                   double momentum,
+                   int batchSize,
+                   int threads,
+                   EarlyStopping earlyStopping) {
+    EarlyStoppingState best = earlyStoppingState;
+    if(best == null) {
+      best = new EarlyStoppingState(weight, optimizerState);
+      copyLayers(weight, best.weight);
+      copyState(optimizerState, best.optimizerState);
+      best.step = step;
+      best.epochs = epochs;
+      best.error = computeError(earlyStopping.getValidationSet());
+    }
+    else if(best.stopped) {
+      earlyStoppingState = null;
+      return 0;
+    }
+    earlyStoppingState = best;
+    Checkpointer checkpointer = checkpointFile == null ?
+        null : new Checkpointer(checkpointFile);
+
+    int trained = 0;
+    int checkpointed = epochs;
+    try {
+      while(trained < iterations &&
+            best.evaluationsWithoutImprovement <
+                earlyStopping.getPatience()) {
+        int epochsToRun = Math.min(
+            earlyStopping.getEvaluationInterval(), iterations - trained);
+        train(examples, null, epochsToRun, learningRate, momentum, batchSize,
+              threads, null);
+        trained += epochsToRun;
+
+        double error = computeError(earlyStopping.getValidationSet());
+        if(error < best.error - earlyStopping.getMinDelta()) {
+          best.error = error;
+          best.evaluationsWithoutImprovement = 0;
+          copyLayers(weight, best.weight);
+          copyState(optimizerState, best.optimizerState);
+          best.step = step;
+          best.epochs = epochs;
+        }
+        else {
+          best.evaluationsWithoutImprovement++;
+        }
+        // Checkpoints only after evaluations, so that resuming evaluates
+        // after the same epochs.
+        if(checkpointer != null &&
+           epochs - checkpointed >= checkpointInterval) {
+          checkpoint(checkpointer, false);
+          checkpointed = epochs;
+        }
+      }
+
+      copyLayers(best.weight, weight);
+      copyState(best.optimizerState, optimizerState);
+      step = best.step;
+      epochs = best.epochs;
+      best.stopped = true;
+      if(checkpointer != null) {
+        checkpoint(checkpointer, true);
+      }
+    }
+    finally {
+      earlyStoppingState = null;
+      if(checkpointer != null) {
+        checkpointer.close();
+      }
+    }
+    return trained;
+  }
+
+  public void setTrainingListener(TrainingListener listener) {
+    this.listener = listener;
+  }
+
+  // Starts the given rule from fresh state. Only the MOMENTUM state is the
+  // previous weight delta that save(file, true) keeps; checkpoints and early
+  // stopping keep the state of every rule.
+  public void setOptimizer(Optimizer optimizer) {
+    this.optimizer = optimizer;
+    earlyStoppingState = null;
+    optimizerState = newOptimizerState(previousWeightDelta);
+    step = 0;
+  }
+
+  public void trainAsynchronously(List <Example> examples,
+                                  int iterations,
+                                  double learningRate,
+                                  double momentum,
+                                  int threads) {
+    if(threads < 1) {
+      throw new RuntimeException("Number of threads must be positive.");
+    }
+    earlyStoppingState = null;
+
+    AsynchronousWorker[] workers = new AsynchronousWorker[threads];
+    Thread[] runners = new Thread[threads];
+    for(int t = 0; t < threads; t++) {
+      int from = (int) ((long) examples.size() * t / threads);
+      int to = (int) ((long) examples.size() * (t + 1) / threads);
+      workers[t] = new AsynchronousWorker(
+          examples.subList(from, to), iterations, learningRate, momentum);
+      runners[t] = new Thread(workers[t]);
+      runners[t].start();
+    }
+
+    try {
+      for(Thread runner : runners) {
+        runner.join();
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while training.", e);
+    }
+    for(AsynchronousWorker worker : workers) {
+      if(worker.failure != null) {
+        throw worker.failure;
       }
     }
   }
 
   public double[] computeOutput(double[] input) {
-    return forwardPropagate(input);
+    double[] output = new double[size[n - 1] - 1];
+    computeOutput(input, output);
+    return output;
+  }
+
+  public void computeOutput(double[] input, double[] output) {
+    if(output == null || output.length != size[n - 1] - 1) {
+      throw new RuntimeException("Wrong number of output elements.");
+    }
+    double[] x = scratch.get();
+    forwardPropagate(input, x);
+    System.arraycopy(x, offset[n - 1], output, 0, output.length);
+  }
+
+  public void computeOutputs(double[] inputs, int rows, double[] outputs) {
+    int inputSize = size[0] - 1;
+    int outputSize = size[n - 1] - 1;
+    if(inputs == null || inputs.length < rows * inputSize) {
+      throw new RuntimeException("Wrong number of input elements.");
+    }
+    if(outputs == null || outputs.length < rows * outputSize) {
+      throw new RuntimeException("Wrong number of output elements.");
+    }
+
+    Batch batch = inferenceBatch.get();
+    double[] first = batch.getX(0);
+    double[] last = batch.getX(n - 1);
+    for(int from = 0; from < rows; from += batch.getCapacity()) {
+      int count = Math.min(batch.getCapacity(), rows - from);
+      for(int b = 0; b < count; b++) {
+        System.arraycopy(inputs, (from + b) * inputSize,
+                         first, b * size[0], inputSize);
+        first[b * size[0] + inputSize] = 1.0;
+      }
+      for(int i = 1; i < n; i++) {
+        forwardLayer(i, batch.getX(i - 1), batch.getX(i), count);
+      }
+      for(int b = 0; b < count; b++) {
+        System.arraycopy(last, b * size[n - 1],
+                         outputs, (from + b) * outputSize, outputSize);
+      }
+    }
+  }
+
+  public QuantizedNeuralNetwork quantize() {
+    return new QuantizedNeuralNetwork(size, weight, activation);
   }
 
   public String toString() {
@@ -67,18 +724,21 @@ public class FeedforwardNeuralNetwork {
     result.append("Neural network with " + n + " layers:" + newLine);
     for(int i = 0; i < n; i++) {
       result.append("  x:    ");
-      for(int j = 0; j < x[i].length; j++) result.append(" " + x[i][j]);
+      for(int j = 0; j < size[i]; j++) result.append(" " + x[offset[i] + j]);
       result.append(newLine);
       result.append("  delta:");
-      for(int j = 0; j < delta[i].length; j++) result.append(" " + delta[i][j]);
+      for(int j = 0; j < size[i]; j++) {
+        result.append(" " + delta[offset[i] + j]);
+      }
       result.append(newLine);
       result.append("  weight:");
       result.append(newLine);
       result.append("  ");
-      for(int j = 0; j < weight[i].length; j++) {
+      int rows = (i == 0 ? 0 : size[i]);
+      for(int j = 0; j < rows; j++) {
         result.append("[");
-        for(int k = 0; k < weight[i][j].length; k++) {
-          result.append(" " + weight[i][j][k]);
+        for(int k = 0; k < size[i - 1]; k++) {
+          result.append(" " + weight[i][j * size[i - 1] + k]);
         }
         result.append(" ] ");
       }
@@ -87,90 +747,752 @@ public class FeedforwardNeuralNetwork {
     return new String(result);
   }
 
-  private double[] forwardPropagate(double[] input) {
-    if(input == null || input.length + 1 != x[0].length) {
+  private void forwardPropagate(double[] input, double[] x) {
+    if(input == null || input.length + 1 != size[0]) {
       throw new RuntimeException("Wrong number of input elements.");
     }
 
-    x[0][x[0].length - 1] = 1.0;
+    x[offset[0] + size[0] - 1] = 1.0;
     for(int i = 0; i < input.length; i++) {
-      x[0][i] = input[i];
+      x[offset[0] + i] = input[i];
     }
 
-    for(int i = 1; i < n; i++) {
-      for(int j = 0; j < x[i].length; j++) {
-        double sum = 0.0;
-        for(int k = 0; k < weight[i][j].length; k++) {
-          sum += weight[i][j][k] * x[i - 1][k];
-        }
-        x[i][j] = sigmoid(sum);
+    forwardLayers(1, x);
+  }
+
+  // Only the nonzero inputs of a sparse example take part in the first
+  // layer's dot products.
+  private void forwardPropagate(Example example, double[] x) {
+    if(!example.isSparse()) {
+      forwardPropagate(example.getInput(), x);
+      return;
+    }
+    if(example.getInputSize() + 1 != size[0]) {
+      throw new RuntimeException("Wrong number of input elements.");
+    }
+
+    int[] indices = example.getIndices();
+    double[] values = example.getValues();
+    int bias = offset[0] + size[0] - 1;
+    for(int k = offset[0]; k < bias; k++) {
+      x[k] = 0.0;
+    }
+    for(int p = 0; p < indices.length; p++) {
+      x[offset[0] + indices[p]] = values[p];
+    }
+    x[bias] = 1.0;
+
+    double[] w = weight[1];
+    int stride = size[0];
+    int out = offset[1];
+    for(int j = 0; j < size[1] - 1; j++) {
+      int row = j * stride;
+      x[out + j] = KERNELS.sparseDot(w, row, indices, values) +
+          w[row + stride - 1];
+    }
+    activation(1).activate(x, out, out + size[1] - 1);
+    x[out + size[1] - 1] = 1.0;
+
+    forwardLayers(2, x);
+  }
+
+  private void forwardLayers(int first, double[] x) {
+    for(int i = first; i < n; i++) {
+      double[] w = weight[i];
+      int stride = size[i - 1];
+      int in = offset[i - 1];
+      int out = offset[i];
+      for(int j = 0; j < size[i] - 1; j++) {
+        x[out + j] = KERNELS.dot(w, j * stride, x, in, stride);
       }
-      x[i][x[i].length - 1] = 1.0;
+      activation(i).activate(x, out, out + size[i] - 1);
+      x[out + size[i] - 1] = 1.0;
     }
+  }
 
-    double[] output = new double[x[n - 1].length - 1];
-    for(int i = 0; i < output.length; i++) {
-      output[i] = x[n - 1][i];
+  // With lazy momentum, the first layer only updates the columns of a
+  // sparse example's nonzero inputs.
+  private double backwardPropagate(double[] output,
+                                   int[] indices,
+                                   double learningRate,
+                                   double momentum,
+                                   double[] x,
+                                   double[] delta,
+                                   double[][][] state,
+                                   long step,
+                                   LazyMomentum lazy) {
+    int last = offset[n - 1];
+    double error = 0.0;
+    for(int i = 0; i < size[n - 1] - 1; i++) {
+      double o = x[last + i];
+      delta[last + i] = output[i] - o;
+      error += activation(n - 1).loss(output[i], o);
     }
+    delta[last + size[n - 1] - 1] = 0.0;
+    activation(n - 1).derive(x, delta, last, last + size[n - 1] - 1);
 
-    return output;
+    for(int i = n - 1; i >= 1; i--) {
+      double[] w = weight[i];
+      double[] previous = state[i][0];
+      int stride = size[i - 1];
+      int in = offset[i - 1];
+      int out = offset[i];
+      boolean propagate = i > 1;
+      if(propagate) {
+        for(int k = 0; k < stride; k++) {
+          delta[in + k] = 0.0;
+        }
+      }
+      if(optimizer != Optimizer.MOMENTUM) {
+        if(propagate) {
+          for(int j = 0; j < size[i] - 1; j++) {
+            KERNELS.axpy(delta[out + j], w, j * stride, delta, in, stride);
+          }
+          activation(i - 1).derive(x, delta, in, in + stride);
+          delta[in + stride - 1] = 0.0;
+        }
+        for(int j = 0; j < size[i]; j++) {
+          optimizer.update(learningRate, delta[out + j], x, in, momentum,
+                           w, state[i], j * stride, stride, step);
+        }
+        continue;
+      }
+      for(int j = 0; j < size[i]; j++) {
+        int row = j * stride;
+        double d = delta[out + j];
+        double rate = learningRate * d;
+        if(propagate && j < size[i] - 1) {
+          KERNELS.propagateAndUpdate(
+              d, rate, x, delta, in, momentum, w, previous, row, stride);
+        }
+        else if(i == 1 && indices != null && lazy != null) {
+          KERNELS.sparseUpdate(
+              rate, x, in, indices, momentum, w, previous, row);
+          KERNELS.update(rate, x, in + stride - 1, momentum,
+                         w, previous, row + stride - 1, 1);
+        }
+        else {
+          KERNELS.update(rate, x, in, momentum, w, previous, row, stride);
+        }
+      }
+      if(i == 1 && lazy != null) {
+        lazy.updated(indices, step);
+      }
+      if(propagate) {
+        activation(i - 1).derive(x, delta, in, in + stride);
+        delta[in + stride - 1] = 0.0;
+      }
+    }
+
+    return error;
+  }
+
+  // The two halves of one per-example training step, for PassBenchmark.
+  void forwardPass(Example example) {
+    forwardPropagate(example, x);
   }
 
-  private double backwardPropagateDelta(double[] output) {
+  double backwardPass(Example example, double learningRate, double momentum) {
+    return backwardPropagate(example.getOutput(),
+                             example.getIndices(),
+                             learningRate,
+                             momentum,
+                             x,
+                             delta,
+                             optimizerState,
+                             ++step,
+                             null);
+  }
+
+  private double trainPass(List <Example> examples,
+                           double learningRate,
+                           double momentum) {
+    LazyMomentum lazy =
+        optimizer == Optimizer.MOMENTUM ? lazyMomentum : null;
+    if(lazy != null) {
+      lazy.begin(step);
+    }
     double error = 0.0;
-    for(int i = 0; i < delta[n - 1].length - 1; i++) {
-      double o = x[n - 1][i];
-      delta[n - 1][i] = o * (1.0 - o) * (output[i] - o);
-      error += Math.pow(output[i] - o, 2.0);
+    for(Example example : examples) {
+      if(lazy != null) {
+        lazy.catchUp(example.getIndices(), momentum,
+                     weight[1], optimizerState[1][0], step);
+      }
+      forwardPropagate(example, x);
+      error += backwardPropagate(example.getOutput(),
+                                 example.getIndices(),
+                                 learningRate,
+                                 momentum,
+                                 x,
+                                 delta,
+                                 optimizerState,
+                                 ++step,
+                                 lazy);
+    }
+    if(lazy != null) {
+      lazy.catchUp(null, momentum, weight[1], optimizerState[1][0], step);
     }
-    delta[n - 1][delta[n - 1].length - 1] = 0.0;
+    return error;
+  }
 
-    for(int i = n - 2; i >= 0; i--) {
-      for(int j = 0; j < delta[i].length; j++) {
-        double sum = 0.0;
-        for(int k = 0; k < delta[i + 1].length; k++) {
-          sum += delta[i + 1][k] * weight[i + 1][k][j];
+  private double trainPass(List <Example> examples,
+                           double learningRate,
+                           double momentum,
+                           int batchSize,
+                           Batch batch,
+                           Batch[] shards,
+                           ForkJoinPool pool) {
+    double error = 0.0;
+    for(int from = 0; from < examples.size(); from += batchSize) {
+      int to = Math.min(from + batchSize, examples.size());
+      if(pool == null) {
+        error += accumulateGradient(examples, from, to, batch);
+        applyGradient(batch, learningRate, to - from, momentum);
+      }
+      else {
+        GradientTask task =
+            new GradientTask(examples, from, to, shards, 0, shards.length);
+        pool.invoke(task);
+        error += task.error;
+        applyGradient(shards[0], learningRate, to - from, momentum);
+      }
+    }
+    return error;
+  }
+
+  private double accumulateGradient(List <Example> examples,
+                                    int from,
+                                    int to,
+                                    Batch batch) {
+    int rows = to - from;
+    double[] input = batch.getX(0);
+    for(int b = 0; b < rows; b++) {
+      Example example = examples.get(from + b);
+      int row = b * size[0];
+      if(example.isSparse()) {
+        if(example.getInputSize() + 1 != size[0]) {
+          throw new RuntimeException("Wrong number of input elements.");
+        }
+        Arrays.fill(input, row, row + size[0] - 1, 0.0);
+        int[] indices = example.getIndices();
+        double[] values = example.getValues();
+        for(int p = 0; p < indices.length; p++) {
+          input[row + indices[p]] = values[p];
         }
-        double o = x[i][j];
-        delta[i][j] = o * (1.0 - o) * sum;
       }
+      else {
+        double[] values = example.getInput();
+        if(values == null || values.length + 1 != size[0]) {
+          throw new RuntimeException("Wrong number of input elements.");
+        }
+        System.arraycopy(values, 0, input, row, values.length);
+      }
+      input[row + size[0] - 1] = 1.0;
+    }
+
+    for(int i = 1; i < n; i++) {
+      forwardLayer(i, batch.getX(i - 1), batch.getX(i), rows);
+    }
+
+    int outputs = size[n - 1];
+    double[] out = batch.getX(n - 1);
+    double[] outDelta = batch.getDelta(n - 1);
+    double error = 0.0;
+    for(int b = 0; b < rows; b++) {
+      double[] output = examples.get(from + b).getOutput();
+      int row = b * outputs;
+      for(int j = 0; j < outputs - 1; j++) {
+        double o = out[row + j];
+        outDelta[row + j] = output[j] - o;
+        error += activation(n - 1).loss(output[j], o);
+      }
+      outDelta[row + outputs - 1] = 0.0;
+    }
+    activation(n - 1).derive(out, outDelta, 0, rows * outputs);
+
+    for(int i = n - 1; i > 1; i--) {
+      backwardLayer(i, batch.getDelta(i), batch.getX(i - 1),
+                    batch.getDelta(i - 1), rows);
+    }
+
+    for(int i = 1; i < n; i++) {
+      gradientLayer(i, batch.getDelta(i), batch.getX(i - 1),
+                    batch.getGradient(i), rows);
     }
 
     return error;
   }
 
-  private void updateWeights(double learningRate, double momentum) {
+  private void forwardLayer(int i, double[] in, double[] out, int rows) {
+    double[] w = weight[i];
+    int stride = size[i - 1];
+    int width = size[i];
+    for(int jb = 0; jb < width - 1; jb += BLOCK) {
+      int jEnd = Math.min(jb + BLOCK, width - 1);
+      for(int b = 0; b < rows; b++) {
+        int inRow = b * stride;
+        int outRow = b * width;
+        for(int j = jb; j < jEnd; j++) {
+          out[outRow + j] = KERNELS.dot(w, j * stride, in, inRow, stride);
+        }
+      }
+    }
+    if(i < n - 1) {
+      activation(i).activate(out, 0, rows * width);
+    }
+    else {
+      for(int b = 0; b < rows; b++) {
+        activation(i).activate(out, b * width, b * width + width - 1);
+      }
+    }
+    for(int b = 0; b < rows; b++) {
+      out[b * width + width - 1] = 1.0;
+    }
+  }
+
+  private void backwardLayer(int i,
+                             double[] delta,
+                             double[] x,
+                             double[] previousDelta,
+                             int rows) {
+    double[] w = weight[i];
+    int stride = size[i - 1];
+    int width = size[i];
+    for(int p = 0; p < rows * stride; p++) {
+      previousDelta[p] = 0.0;
+    }
+    for(int kb = 0; kb < width - 1; kb += BLOCK) {
+      int kEnd = Math.min(kb + BLOCK, width - 1);
+      for(int b = 0; b < rows; b++) {
+        int prevRow = b * stride;
+        for(int k = kb; k < kEnd; k++) {
+          KERNELS.axpy(delta[b * width + k], w, k * stride,
+                       previousDelta, prevRow, stride);
+        }
+      }
+    }
+    activation(i - 1).derive(x, previousDelta, 0, rows * stride);
+    for(int b = 0; b < rows; b++) {
+      previousDelta[b * stride + stride - 1] = 0.0;
+    }
+  }
+
+  private void gradientLayer(int i,
+                             double[] delta,
+                             double[] x,
+                             double[] gradient,
+                             int rows) {
+    int stride = size[i - 1];
+    int width = size[i];
+    for(int p = 0; p < gradient.length; p++) {
+      gradient[p] = 0.0;
+    }
+    for(int jb = 0; jb < width; jb += BLOCK) {
+      int jEnd = Math.min(jb + BLOCK, width);
+      for(int b = 0; b < rows; b++) {
+        int inRow = b * stride;
+        for(int j = jb; j < jEnd; j++) {
+          KERNELS.axpy(delta[b * width + j], x, inRow,
+                       gradient, j * stride, stride);
+        }
+      }
+    }
+  }
+
+  private void applyGradient(Batch batch,
+                             double learningRate,
+                             int count,
+                             double momentum) {
+    step++;
     for(int i = 1; i < n; i++) {
-      for(int j = 0; j < weight[i].length; j++) {
-        for(int k = 0; k < weight[i][j].length; k++) {
-          double weightDelta = (learningRate * delta[i][j] * x[i - 1][k] +
-              momentum * previousWeightDelta[i][j][k]);
-          weight[i][j][k] += weightDelta;
-          previousWeightDelta[i][j][k] = weightDelta;
+      double[] w = weight[i];
+      if(optimizer == Optimizer.MOMENTUM) {
+        KERNELS.update(learningRate / count, batch.getGradient(i), 0, momentum,
+                       w, previousWeightDelta[i], 0, w.length);
+      }
+      else {
+        optimizer.update(learningRate, 1.0 / count, batch.getGradient(i), 0,
+                         momentum, w, optimizerState[i], 0, w.length, step);
+      }
+    }
+  }
+
+  private class AsynchronousWorker implements Runnable {
+
+    private List <Example> examples;
+    private int iterations;
+    private double learningRate;
+    private double momentum;
+    private double[] x;
+    private double[] delta;
+    private double[][][] state;
+    private LazyMomentum lazy;
+    private long step;
+    private RuntimeException failure;
+
+    AsynchronousWorker(List <Example> examples,
+                       int iterations,
+                       double learningRate,
+                       double momentum) {
+      this.examples = examples;
+      this.iterations = iterations;
+      this.learningRate = learningRate;
+      this.momentum = momentum;
+      x = new double[FeedforwardNeuralNetwork.this.x.length];
+      delta = new double[FeedforwardNeuralNetwork.this.delta.length];
+      double[][] previousWeightDelta = new double[n][];
+      for(int i = 0; i < n; i++) {
+        previousWeightDelta[i] = new double[weight[i].length];
+      }
+      state = newOptimizerState(previousWeightDelta);
+      if(optimizer == Optimizer.MOMENTUM) {
+        lazy = new LazyMomentum(size[1], size[0]);
+      }
+    }
+
+    public void run() {
+      try {
+        while(iterations-- > 0) {
+          if(lazy != null) {
+            lazy.begin(step);
+          }
+          for(Example example : examples) {
+            if(lazy != null) {
+              lazy.catchUp(example.getIndices(), momentum,
+                           weight[1], state[1][0], step);
+            }
+            forwardPropagate(example, x);
+            backwardPropagate(example.getOutput(),
+                              example.getIndices(),
+                              learningRate,
+                              momentum,
+                              x,
+                              delta,
+                              state,
+                              ++step,
+                              lazy);
+          }
+          if(lazy != null) {
+            lazy.catchUp(null, momentum, weight[1], state[1][0], step);
+          }
         }
       }
+      catch(RuntimeException e) {
+        failure = e;
+      }
+    }
+  }
+
+  private class GradientTask extends RecursiveAction {
+
+    private static final long serialVersionUID = 1L;
+
+    private List <Example> examples;
+    private int from;
+    private int to;
+    private Batch[] shards;
+    private int lo;
+    private int hi;
+    private double error;
+
+    GradientTask(List <Example> examples,
+                 int from,
+                 int to,
+                 Batch[] shards,
+                 int lo,
+                 int hi) {
+      this.examples = examples;
+      this.from = from;
+      this.to = to;
+      this.shards = shards;
+      this.lo = lo;
+      this.hi = hi;
+    }
+
+    protected void compute() {
+      if(hi - lo == 1) {
+        error = accumulateGradient(
+            examples, shardStart(lo), shardStart(lo + 1), shards[lo]);
+        return;
+      }
+
+      int mid = (lo + hi) / 2;
+      GradientTask left =
+          new GradientTask(examples, from, to, shards, lo, mid);
+      GradientTask right =
+          new GradientTask(examples, from, to, shards, mid, hi);
+      invokeAll(left, right);
+      error = left.error + right.error;
+      for(int i = 1; i < n; i++) {
+        double[] sum = shards[lo].getGradient(i);
+        double[] addend = shards[mid].getGradient(i);
+        for(int p = 0; p < sum.length; p++) {
+          sum[p] += addend[p];
+        }
+      }
+    }
+
+    private int shardStart(int shard) {
+      return from + (int) ((long) (to - from) * shard / shards.length);
+    }
+  }
+
+  private void reportEpoch(EpochEvent event,
+                           long start,
+                           int examples,
+                           double error,
+                           double[][] epochStart) {
+    long nanos = System.nanoTime() - start;
+    double[] updateNorms = new double[n];
+    for(int i = 1; i < n; i++) {
+      double sum = 0.0;
+      for(int j = 0; j < weight[i].length; j++) {
+        double change = weight[i][j] - epochStart[i][j];
+        sum += change * change;
+      }
+      updateNorms[i] = Math.sqrt(sum);
+    }
+    EpochMetrics metrics =
+        new EpochMetrics(epochs, examples, nanos, error, updateNorms);
+
+    event.end();
+    if(event.shouldCommit()) {
+      event.epoch = epochs;
+      event.examples = examples;
+      event.examplesPerSecond = metrics.getExamplesPerSecond();
+      event.trainingError = error;
+      event.updateNorm = metrics.getUpdateNorm();
+      event.commit();
+    }
+    if(listener != null) {
+      listener.epochCompleted(metrics);
     }
   }
 
   private double computeError(List <Example> examples) {
+    int last = offset[n - 1];
     double error = 0.0;
     for(Example example : examples) {
-      forwardPropagate(example.getInput());
+      forwardPropagate(example, x);
       double[] output = example.getOutput();
-      for(int i = 0; i < x[n - 1].length - 1; i++) {
-        error += Math.pow(output[i] - x[n - 1][i], 2.0);
+      for(int i = 0; i < size[n - 1] - 1; i++) {
+        error += activation(n - 1).loss(output[i], x[last + i]);
       }
     }
     return error;
   }
 
-  private double sigmoid(double x) {
-    return 1.0 / (1.0 + Math.exp(-x));
+  // Each layer makes one call for a whole run of neurons, so every
+  // activation's loop is compiled on its own and sees a single type.
+  private Activation activation(int layer) {
+    return activation[layer - 1];
+  }
+
+  private static Activation[] uniform(int layers,
+                                      Activation hidden,
+                                      Activation output) {
+    Activation[] activation = new Activation[layers - 1];
+    for(int i = 0; i < activation.length; i++) {
+      activation[i] = i < activation.length - 1 ? hidden : output;
+    }
+    return activation;
+  }
+
+  // Reads and checks everything up to the weights, leaving the buffer at
+  // the first weight.
+  private static Header readHeader(ByteBuffer buffer) throws IOException {
+    require(buffer, 4 * 3);
+    if(buffer.getInt() != MAGIC) {
+      throw new IOException("Not a neural network model file.");
+    }
+    int version = buffer.getInt();
+    if(version < 1 || version > VERSION) {
+      throw new IOException("Unsupported model version: " + version);
+    }
+
+    int count = buffer.getInt();
+    if(count < 2) {
+      throw new IOException("Corrupt model file: " + count + " layers.");
+    }
+    require(buffer, 4L * count);
+    int[] layers = new int[count];
+    for(int i = 0; i < layers.length; i++) {
+      layers[i] = buffer.getInt();
+      if(layers[i] < 1) {
+        throw new IOException(
+            "Corrupt model file: layer of size " + layers[i] + ".");
+      }
+    }
+    // Version 1 stores one activation for all layers, version 2 the
+    // hidden and the output activation, version 3 one per layer.
+    Activation[] activation;
+    if(version >= 3) {
+      activation = new Activation[layers.length - 1];
+      for(int i = 0; i < activation.length; i++) {
+        activation[i] = readActivation(buffer);
+      }
+    }
+    else {
+      Activation hidden = readActivation(buffer);
+      Activation output = version >= 2 ? readActivation(buffer) : hidden;
+      activation = uniform(layers.length, hidden, output);
+    }
+    require(buffer, 1);
+    byte contents = buffer.get();
+    if(version < 4 && contents != WEIGHTS) {
+      contents = WITH_MOMENTUM;
+    }
+    if(contents != WEIGHTS &&
+       contents != WITH_MOMENTUM &&
+       contents != TRAINING_STATE &&
+       (contents != EARLY_STOPPING || version < 5)) {
+      throw new IOException("Corrupt model file: contents " + contents + ".");
+    }
+
+    long weights = 0;
+    for(int i = 1; i < layers.length; i++) {
+      weights += (layers[i] + 1L) * (layers[i - 1] + 1L);
+    }
+    return new Header(version, layers, activation, contents, weights);
+  }
+
+  private static Activation readActivation(ByteBuffer buffer)
+      throws IOException {
+    String name = readName(buffer);
+    try {
+      return Activation.forName(name);
+    }
+    catch(RuntimeException e) {
+      throw new IOException("Corrupt model file.", e);
+    }
+  }
+
+  // Version 4 stores only the name, so it gets the default parameters.
+  private static Optimizer readOptimizer(ByteBuffer buffer, int version)
+      throws IOException {
+    String name = readName(buffer);
+    if(version < 5) {
+      try {
+        return Optimizer.forName(name);
+      }
+      catch(RuntimeException e) {
+        throw new IOException("Corrupt model file.", e);
+      }
+    }
+    require(buffer, 4);
+    int count = buffer.getInt();
+    if(count < 0) {
+      throw new IOException(
+          "Corrupt model file: " + count + " optimizer parameters.");
+    }
+    require(buffer, 8L * count);
+    double[] parameters = new double[count];
+    buffer.asDoubleBuffer().get(parameters);
+    buffer.position(buffer.position() + 8 * count);
+    try {
+      return Optimizer.forName(name, parameters);
+    }
+    catch(RuntimeException e) {
+      throw new IOException("Corrupt model file.", e);
+    }
+  }
+
+  private static String readName(ByteBuffer buffer) throws IOException {
+    require(buffer, 4);
+    int length = buffer.getInt();
+    if(length < 0) {
+      throw new IOException(
+          "Corrupt model file: name of length " + length + ".");
+    }
+    require(buffer, length);
+    byte[] name = new byte[length];
+    buffer.get(name);
+    return new String(name, "US-ASCII");
+  }
+
+  private static void require(ByteBuffer buffer, long bytes)
+      throws IOException {
+    if(buffer.remaining() < bytes) {
+      throw new IOException("Truncated model file.");
+    }
+  }
+
+  private double[][][] newOptimizerState(double[][] previousWeightDelta) {
+    double[][][] state = new double[n][][];
+    for(int i = 0; i < n; i++) {
+      if(optimizer == Optimizer.MOMENTUM) {
+        state[i] = new double[][] {previousWeightDelta[i]};
+      }
+      else {
+        state[i] = new double[optimizer.getStateSize()][weight[i].length];
+      }
+    }
+    return state;
+  }
+
+  private void copyLayers(double[][] from, double[][] to) {
+    for(int i = 0; i < n; i++) {
+      System.arraycopy(from[i], 0, to[i], 0, from[i].length);
+    }
+  }
+
+  private void copyState(double[][][] from, double[][][] to) {
+    for(int i = 0; i < n; i++) {
+      for(int s = 0; s < from[i].length; s++) {
+        System.arraycopy(from[i][s], 0, to[i][s], 0, from[i][s].length);
+      }
+    }
   }
 
   private double randomScalar() {
     double num = random.nextDouble();
     return random.nextBoolean() ? -num : num;
   }
-}
 
+  private static final class Header {
+
+    private final int version;
+    private final int[] layers;
+    private final Activation[] activation;
+    private final byte contents;
+    private final long weights;
+
+    Header(int version,
+           int[] layers,
+           Activation[] activation,
+           byte contents,
+           long weights) {
+      this.version = version;
+      this.layers = layers;
+      this.activation = activation;
+      this.contents = contents;
+      this.weights = weights;
+    }
+  }
+
+  // What early stopping keeps between evaluations: the best network so far,
+  // its counters and error, and how the run has gone since.
+  private static final class EarlyStoppingState {
+
+    private final double[][] weight;
+    private final double[][][] optimizerState;
+    private long step;
+    private int epochs;
+    private double error;
+    private int evaluationsWithoutImprovement;
+    private boolean stopped;
+
+    // Allocates arrays shaped like the given ones.
+    EarlyStoppingState(double[][] weight, double[][][] optimizerState) {
+      this.weight = new double[weight.length][];
+      this.optimizerState = new double[optimizerState.length][][];
+      for(int i = 0; i < weight.length; i++) {
+        this.weight[i] = new double[weight[i].length];
+        this.optimizerState[i] = new double[optimizerState[i].length][];
+        for(int s = 0; s < optimizerState[i].length; s++) {
+          this.optimizerState[i][s] = new double[optimizerState[i][s].length];
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,202 @@
+package neuralnet;
+
+import java.util.List;
+import java.util.Random;
+
+public class FloatFeedforwardNeuralNetwork implements NeuralNetwork {
+
+  private int n;
+  private int[] size;
+  private int[] offset;
+  private boolean doubleAccumulation;
+  private float[] x;
+  private float[] delta;
+  private float[][] weight;
+  private float[][] previousWeightDelta;
+  private ThreadLocal <float[]> scratch;
+  private Random random;
+
+  public FloatFeedforwardNeuralNetwork(int[] layers) {
+    this(layers, 42);
+  }
+
+  public FloatFeedforwardNeuralNetwork(int[] layers, int seed) {
+    this(layers, seed, false);
+  }
+
+  public FloatFeedforwardNeuralNetwork(int[] layers,
+                                       int seed,
+                                       boolean doubleAccumulation) {
+    this.doubleAccumulation = doubleAccumulation;
+    n = layers.length;
+    size = new int[n];
+    offset = new int[n];
+    weight = new float[n][];
+    previousWeightDelta = new float[n][];
+    int total = 0;
+    for(int i = 0; i < n; i++) {
+      size[i] = layers[i] + 1;
+      offset[i] = total;
+      total += size[i];
+      if(i == 0) {
+        weight[i] = new float[0];
+        previousWeightDelta[i] = new float[0];
+        continue;
+      }
+      weight[i] = new float[size[i] * size[i - 1]];
+      previousWeightDelta[i] = new float[size[i] * size[i - 1]];
+    }
+    x = new float[total];
+    delta = new float[total];
+    scratch = new ThreadLocal <float[]> () {
+      protected float[] initialValue() {
+        return new float[x.length];
+      }
+    };
+
+    random = new Random(seed);
+    for(int i = 0; i < weight.length; i++) {
+      for(int j = 0; j < weight[i].length; j++) {
+        weight[i][j] = (float) randomScalar();
+      }
+    }
+  }
+
+  public void train(List <Example> examples,
+                    int iterations,
+                    double learningRate,
+                    double momentum) {
+    while(iterations-- > 0) {
+      for(Example example : examples) {
+        forwardPropagate(example.getInput(), x);
+        backwardPropagate(
+            example.getOutput(), (float) learningRate, (float) momentum);
+      }
+    }
+  }
+
+  public double[] computeOutput(double[] input) {
+    float[] x = scratch.get();
+    forwardPropagate(input, x);
+    double[] output = new double[size[n - 1] - 1];
+    for(int i = 0; i < output.length; i++) {
+      output[i] = x[offset[n - 1] + i];
+    }
+    return output;
+  }
+
+  public String toString() {
+    StringBuilder result = new StringBuilder();
+    String newLine = System.getProperty("line.separator");
+    result.append("Float neural network with " + n + " layers:" + newLine);
+    for(int i = 1; i < n; i++) {
+      result.append("  weight:");
+      result.append(newLine);
+      result.append("  ");
+      for(int j = 0; j < size[i]; j++) {
+        result.append("[");
+        for(int k = 0; k < size[i - 1]; k++) {
+          result.append(" " + weight[i][j * size[i - 1] + k]);
+        }
+        result.append(" ] ");
+      }
+      result.append(newLine);
+    }
+    return new String(result);
+  }
+
+  private void forwardPropagate(double[] input, float[] x) {
+    if(input == null || input.length + 1 != size[0]) {
+      throw new RuntimeException("Wrong number of input elements.");
+    }
+
+    x[offset[0] + size[0] - 1] = 1.0f;
+    for(int i = 0; i < input.length; i++) {
+      x[offset[0] + i] = (float) input[i];
+    }
+
+    for(int i = 1; i < n; i++) {
+      float[] w = weight[i];
+      int stride = size[i - 1];
+      int in = offset[i - 1];
+      int out = offset[i];
+      for(int j = 0; j < size[i] - 1; j++) {
+        int row = j * stride;
+        if(doubleAccumulation) {
+          double sum = 0.0;
+          for(int k = 0; k < stride; k++) {
+            sum += (double) w[row + k] * x[in + k];
+          }
+          x[out + j] = (float) (1.0 / (1.0 + Math.exp(-sum)));
+        }
+        else {
+          float sum = 0.0f;
+          for(int k = 0; k < stride; k++) {
+            sum += w[row + k] * x[in + k];
+          }
+          x[out + j] = (float) (1.0 / (1.0 + Math.exp(-sum)));
+        }
+      }
+      x[out + size[i] - 1] = 1.0f;
+    }
+  }
+
+  private void backwardPropagate(double[] output,
+                                 float learningRate,
+                                 float momentum) {
+    int last = offset[n - 1];
+    for(int i = 0; i < size[n - 1] - 1; i++) {
+      float o = x[last + i];
+      delta[last + i] = o * (1.0f - o) * ((float) output[i] - o);
+    }
+    delta[last + size[n - 1] - 1] = 0.0f;
+
+    for(int i = n - 1; i >= 1; i--) {
+      float[] w = weight[i];
+      float[] previous = previousWeightDelta[i];
+      int stride = size[i - 1];
+      int in = offset[i - 1];
+      int out = offset[i];
+      boolean propagate = i > 1;
+      if(propagate) {
+        for(int k = 0; k < stride; k++) {
+          delta[in + k] = 0.0f;
+        }
+      }
+      for(int j = 0; j < size[i]; j++) {
+        int row = j * stride;
+        float d = delta[out + j];
+        float rate = learningRate * d;
+        if(propagate && j < size[i] - 1) {
+          for(int k = 0; k < stride; k++) {
+            float oldWeight = w[row + k];
+            delta[in + k] += d * oldWeight;
+            float weightDelta = (rate * x[in + k] +
+                momentum * previous[row + k]);
+            w[row + k] = oldWeight + weightDelta;
+            previous[row + k] = weightDelta;
+          }
+        }
+        else {
+          for(int k = 0; k < stride; k++) {
+            float weightDelta = (rate * x[in + k] +
+                momentum * previous[row + k]);
+            w[row + k] += weightDelta;
+            previous[row + k] = weightDelta;
+          }
+        }
+      }
+      if(propagate) {
+        for(int k = 0; k < stride; k++) {
+          float o = x[in + k];
+          delta[in + k] = o * (1.0f - o) * delta[in + k];
+        }
+      }
+    }
+  }
+
+  private double randomScalar() {
+    double num = random.nextDouble();
+    return random.nextBoolean() ? -num : num;
+  }
+}
@@ -0,0 +1,156 @@
+package neuralnet;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class HyperparameterSearch {
+
+  private static final Comparator <Candidate> RANKING =
+      new Comparator <Candidate> () {
+        public int compare(Candidate a, Candidate b) {
+          if(a.iterations != b.iterations) {
+            return a.iterations > b.iterations ? -1 : 1;
+          }
+          if(a.score != b.score) {
+            return a.score > b.score ? -1 : 1;
+          }
+          return Long.compare(a.nanos, b.nanos);
+        }
+      };
+
+  private List <Example> examples;
+  private List <Example> validationSet;
+  private Scorer scorer;
+  private int threads;
+
+  public HyperparameterSearch(List <Example> examples,
+                              List <Example> validationSet,
+                              Scorer scorer,
+                              int threads) {
+    if(threads < 1) {
+      throw new RuntimeException("Number of threads must be positive.");
+    }
+    this.examples = examples;
+    this.validationSet = validationSet;
+    this.scorer = scorer;
+    this.threads = threads;
+  }
+
+  public static List <Configuration> grid(int[][] topologies,
+                                          double[] learningRates,
+                                          double[] momentums,
+                                          int batchSize) {
+    List <Configuration> configurations = new ArrayList <Configuration> ();
+    for(int[] layers : topologies) {
+      for(double learningRate : learningRates) {
+        for(double momentum : momentums) {
+          configurations.add(
+              new Configuration(layers, learningRate, momentum, batchSize));
+        }
+      }
+    }
+    return configurations;
+  }
+
+  public static List <Configuration> sample(
+      List <Configuration> configurations,
+      int count,
+      long seed) {
+    List <Configuration> shuffled =
+        new ArrayList <Configuration> (configurations);
+    Collections.shuffle(shuffled, new Random(seed));
+    return shuffled.subList(0, Math.min(count, shuffled.size()));
+  }
+
+  public List <SearchResult> search(List <Configuration> configurations,
+                                    int iterations,
+                                    int minIterations) {
+    List <Candidate> candidates = new ArrayList <Candidate> ();
+    for(Configuration configuration : configurations) {
+      candidates.add(new Candidate(configuration));
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List <Candidate> alive = new ArrayList <Candidate> (candidates);
+      int budget = Math.max(1, Math.min(minIterations, iterations));
+      while(true) {
+        List <Callable <Object> > tasks = new ArrayList <Callable <Object> > ();
+        for(Candidate candidate : alive) {
+          tasks.add(candidate.trainTo(budget));
+        }
+        for(Future <Object> future : pool.invokeAll(tasks)) {
+          future.get();
+        }
+
+        if(budget >= iterations) break;
+        if(alive.size() > 1) {
+          Collections.sort(alive, RANKING);
+          alive = new ArrayList <Candidate> (
+              alive.subList(0, (alive.size() + 1) / 2));
+        }
+        budget = (alive.size() == 1 ? iterations
+                                    : Math.min(2 * budget, iterations));
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while searching.", e);
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Training failed.", e.getCause());
+    }
+    finally {
+      pool.shutdown();
+    }
+
+    Collections.sort(candidates, RANKING);
+    List <SearchResult> results = new ArrayList <SearchResult> ();
+    for(Candidate candidate : candidates) {
+      results.add(new SearchResult(candidate.configuration,
+                                   candidate.score,
+                                   candidate.iterations,
+                                   candidate.nanos / 1e6));
+    }
+    return results;
+  }
+
+  private class Candidate {
+
+    private Configuration configuration;
+    private FeedforwardNeuralNetwork network;
+    private int iterations;
+    private long nanos;
+    private double score;
+
+    Candidate(Configuration configuration) {
+      this.configuration = configuration;
+      network = new FeedforwardNeuralNetwork(configuration.getLayers());
+    }
+
+    Callable <Object> trainTo(final int budget) {
+      return new Callable <Object> () {
+        public Object call() {
+          long start = System.nanoTime();
+          network.train(examples,
+                        budget - iterations,
+                        configuration.getLearningRate(),
+                        configuration.getMomentum(),
+                        configuration.getBatchSize());
+          nanos += System.nanoTime() - start;
+          iterations = budget;
+          score = scorer.score(network, validationSet);
+          return null;
+        }
+      };
+    }
+  }
+}
@@ -0,0 +1,7 @@
+package neuralnet;
+
+// A network that can only compute outputs, such as a quantized copy.
+public interface InferenceNetwork {
+
+  double[] computeOutput(double[] input);
+}
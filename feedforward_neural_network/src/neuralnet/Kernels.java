@@ -0,0 +1,124 @@
+package neuralnet;
+
+import java.nio.ByteBuffer;
+
+// Public only so that callers can see which backend is in use; the kernels
+// themselves stay inside the package.
+public abstract class Kernels {
+
+  static final Kernels INSTANCE = select();
+
+  Kernels() {
+  }
+
+  // "scalar", or "vector-" and the vector width in bits.
+  public static String getName() {
+    return INSTANCE.name();
+  }
+
+  abstract String name();
+
+  abstract double dot(double[] a,
+                      int aOffset,
+                      double[] b,
+                      int bOffset,
+                      int length);
+
+  // a holds doubles in its own byte order from byte index aIndex on.
+  abstract double dot(ByteBuffer a,
+                      int aIndex,
+                      double[] b,
+                      int bOffset,
+                      int length);
+
+  abstract int dot(byte[] a,
+                   int aOffset,
+                   byte[] b,
+                   int bOffset,
+                   int length);
+
+  abstract void axpy(double alpha,
+                     double[] x,
+                     int xOffset,
+                     double[] y,
+                     int yOffset,
+                     int length);
+
+  abstract void update(double rate,
+                       double[] x,
+                       int xOffset,
+                       double momentum,
+                       double[] weight,
+                       double[] previousWeightDelta,
+                       int offset,
+                       int length);
+
+  abstract void propagateAndUpdate(double delta,
+                                   double rate,
+                                   double[] x,
+                                   double[] previousDelta,
+                                   int xOffset,
+                                   double momentum,
+                                   double[] weight,
+                                   double[] previousWeightDelta,
+                                   int offset,
+                                   int length);
+
+  // The sparse kernels visit only the given columns, in order, so the
+  // scalar and vector backends share them.
+  double sparseDot(double[] weight,
+                   int offset,
+                   int[] indices,
+                   double[] values) {
+    double sum = 0.0;
+    for(int p = 0; p < indices.length; p++) {
+      sum += weight[offset + indices[p]] * values[p];
+    }
+    return sum;
+  }
+
+  // Like update, but only for the given columns. LazyMomentum applies the
+  // momentum steps the other columns skip.
+  void sparseUpdate(double rate,
+                    double[] x,
+                    int xOffset,
+                    int[] indices,
+                    double momentum,
+                    double[] weight,
+                    double[] previousWeightDelta,
+                    int offset) {
+    for(int p = 0; p < indices.length; p++) {
+      int k = indices[p];
+      double weightDelta = (rate * x[xOffset + k] +
+          momentum * previousWeightDelta[offset + k]);
+      weight[offset + k] += weightDelta;
+      previousWeightDelta[offset + k] = weightDelta;
+    }
+  }
+
+  // Falls back to the scalar kernels only when the vector kernels were not
+  // compiled or the jdk.incubator.vector module is not loaded. Any other
+  // failure, such as an error in their static initializer, propagates.
+  private static Kernels select() {
+    if("scalar".equals(System.getProperty("neuralnet.kernels"))) {
+      return new ScalarKernels();
+    }
+    try {
+      return (Kernels) Class.forName("neuralnet.VectorKernels")
+          .getDeclaredConstructor().newInstance();
+    }
+    catch(ClassNotFoundException e) {
+      return new ScalarKernels();
+    }
+    catch(NoClassDefFoundError e) {
+      String missing = e.getMessage();
+      if(missing == null || !missing.startsWith("jdk/incubator/vector/")) {
+        throw e;
+      }
+      return new ScalarKernels();
+    }
+    catch(ReflectiveOperationException e) {
+      throw new RuntimeException(e);
+    }
+  }
+}
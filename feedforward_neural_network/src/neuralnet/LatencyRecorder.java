@@ -0,0 +1,53 @@
+package neuralnet;
+
+import java.util.Arrays;
+
+// Counts events since the last reset and keeps the latencies of the most
+// recent ones, in nanoseconds, for percentiles. Safe to share between
+// threads.
+public class LatencyRecorder {
+
+  private long[] samples;
+  private long count;
+  private long start;
+
+  public LatencyRecorder(int capacity) {
+    if(capacity < 1) {
+      throw new RuntimeException("Capacity must be positive.");
+    }
+    samples = new long[capacity];
+    reset();
+  }
+
+  public synchronized void record(long nanos) {
+    samples[(int) (count % samples.length)] = nanos;
+    count++;
+  }
+
+  public synchronized void reset() {
+    count = 0;
+    start = System.nanoTime();
+  }
+
+  public synchronized long getCount() {
+    return count;
+  }
+
+  // Events per second since the last reset.
+  public synchronized double getThroughput() {
+    return count * 1e9 / (System.nanoTime() - start);
+  }
+
+  // The latency that the given fraction of the kept samples do not exceed,
+  // or 0 if there are none.
+  public synchronized long getPercentile(double fraction) {
+    int kept = (int) Math.min(count, samples.length);
+    if(kept == 0) {
+      return 0L;
+    }
+    long[] sorted = Arrays.copyOf(samples, kept);
+    Arrays.sort(sorted);
+    int index = (int) Math.ceil(fraction * kept) - 1;
+    return sorted[Math.max(0, Math.min(kept - 1, index))];
+  }
+}
@@ -0,0 +1,63 @@
+package neuralnet;
+
+import java.util.Arrays;
+
+// Defers the momentum steps of first-layer weights whose input is 0. Such
+// a weight only moves by its decaying previous delta, so after g skipped
+// steps it has moved by previous * (m + m^2 + ... + m^g) and its previous
+// delta is previous * m^g. The skipped steps of a column are applied at
+// once before its input is next nonzero, and those of all columns at the
+// end of every pass, so the weights are only ever stale inside a pass.
+class LazyMomentum {
+
+  private int rows;
+  private int stride;
+  private long[] updated;
+
+  LazyMomentum(int rows, int stride) {
+    this.rows = rows;
+    this.stride = stride;
+    updated = new long[stride - 1];
+  }
+
+  // Starts a pass with every column up to date at the given step.
+  void begin(long step) {
+    Arrays.fill(updated, step);
+  }
+
+  // Brings the given columns, or all of them if indices is null, up to the
+  // given step.
+  void catchUp(int[] indices,
+               double momentum,
+               double[] weight,
+               double[] previousWeightDelta,
+               long step) {
+    int count = indices == null ? updated.length : indices.length;
+    for(int p = 0; p < count; p++) {
+      int k = indices == null ? p : indices[p];
+      long skipped = step - updated[k];
+      if(skipped == 0) continue;
+      double decay = Math.pow(momentum, skipped);
+      double moved = momentum == 1.0 ?
+          skipped : momentum * (1.0 - decay) / (1.0 - momentum);
+      for(int j = 0; j < rows; j++) {
+        int w = j * stride + k;
+        weight[w] += previousWeightDelta[w] * moved;
+        previousWeightDelta[w] *= decay;
+      }
+      updated[k] = step;
+    }
+  }
+
+  // Records that the given columns, or all of them if indices is null, were
+  // updated in the given step.
+  void updated(int[] indices, long step) {
+    if(indices == null) {
+      Arrays.fill(updated, step);
+      return;
+    }
+    for(int k : indices) {
+      updated[k] = step;
+    }
+  }
+}
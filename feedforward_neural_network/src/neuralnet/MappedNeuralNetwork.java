@@ -0,0 +1,92 @@
+package neuralnet;
+
+import java.nio.ByteBuffer;
+
+// Inference-only network whose weights stay in a memory-mapped model file.
+// Nothing is copied onto the heap, so processes that map the same file
+// share its pages, and the outputs equal those of the network it was saved
+// from.
+public class MappedNeuralNetwork implements InferenceNetwork {
+
+  private static final Kernels KERNELS = Kernels.INSTANCE;
+
+  private int n;
+  private int[] size;
+  private int[] offset;
+  private Activation[] activation;
+  private ByteBuffer weights;
+  private int[] weightIndex;
+  private ThreadLocal <double[]> scratch;
+
+  // The weights of each layer follow those of the one before, starting at
+  // byte index first of the buffer.
+  MappedNeuralNetwork(int[] layers,
+                      Activation[] activation,
+                      ByteBuffer weights,
+                      int first) {
+    this.activation = activation.clone();
+    this.weights = weights;
+    n = layers.length;
+    size = new int[n];
+    offset = new int[n];
+    weightIndex = new int[n];
+    int total = 0;
+    int index = first;
+    for(int i = 0; i < n; i++) {
+      size[i] = layers[i] + 1;
+      offset[i] = total;
+      total += size[i];
+      if(i > 0) {
+        weightIndex[i] = index;
+        index += 8 * size[i] * size[i - 1];
+      }
+    }
+
+    final int length = total;
+    scratch = new ThreadLocal <double[]> () {
+      protected double[] initialValue() {
+        return new double[length];
+      }
+    };
+  }
+
+  public int getInputSize() {
+    return size[0] - 1;
+  }
+
+  public int getOutputSize() {
+    return size[n - 1] - 1;
+  }
+
+  public double[] computeOutput(double[] input) {
+    double[] output = new double[size[n - 1] - 1];
+    computeOutput(input, output);
+    return output;
+  }
+
+  public void computeOutput(double[] input, double[] output) {
+    if(input == null || input.length + 1 != size[0]) {
+      throw new RuntimeException("Wrong number of input elements.");
+    }
+    if(output == null || output.length != size[n - 1] - 1) {
+      throw new RuntimeException("Wrong number of output elements.");
+    }
+
+    double[] x = scratch.get();
+    System.arraycopy(input, 0, x, offset[0], input.length);
+    x[offset[0] + size[0] - 1] = 1.0;
+
+    for(int i = 1; i < n; i++) {
+      int stride = size[i - 1];
+      int in = offset[i - 1];
+      int out = offset[i];
+      for(int j = 0; j < size[i] - 1; j++) {
+        x[out + j] = KERNELS.dot(
+            weights, weightIndex[i] + 8 * j * stride, x, in, stride);
+      }
+      activation[i - 1].activate(x, out, out + size[i] - 1);
+      x[out + size[i] - 1] = 1.0;
+    }
+    System.arraycopy(x, offset[n - 1], output, 0, output.length);
+  }
+}
@@ -0,0 +1,11 @@
+package neuralnet;
+
+import java.util.List;
+
+public interface NeuralNetwork extends InferenceNetwork {
+
+  void train(List <Example> examples,
+             int iterations,
+             double learningRate,
+             double momentum);
+}
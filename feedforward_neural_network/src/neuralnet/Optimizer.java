@@ -0,0 +1,228 @@
+package neuralnet;
+
+import java.util.Arrays;
+
+// Update rules for a run of weights. The descent direction of weight k is
+// scale * x[xOffset + k], i.e. the negative gradient. Each rule keeps its
+// per-weight state in getStateSize() arrays laid out like the weights.
+public abstract class Optimizer {
+
+  private static final Kernels KERNELS = Kernels.INSTANCE;
+
+  // The original rule: the weight moves by the learning rate times the
+  // descent direction plus momentum times its previous move.
+  public static final Optimizer MOMENTUM = new Momentum();
+
+  // Momentum evaluated at the look-ahead point, in the form of Bengio et
+  // al. that only needs the current gradient.
+  public static final Optimizer NESTEROV = new Nesterov();
+
+  // Per-weight step sizes from a moving average of squared gradients. The
+  // momentum argument is ignored.
+  public static final Optimizer RMSPROP = new RMSProp(0.9, 1e-8);
+
+  // Bias-corrected first and second moment estimates (Kingma and Ba). The
+  // momentum argument is ignored.
+  public static final Optimizer ADAM = new Adam(0.9, 0.999, 1e-8);
+
+  private String name;
+
+  Optimizer(String name) {
+    this.name = name;
+  }
+
+  public static Optimizer forName(String name) {
+    if(name.equals("momentum")) return MOMENTUM;
+    if(name.equals("nesterov")) return NESTEROV;
+    if(name.equals("rmsprop")) return RMSPROP;
+    if(name.equals("adam")) return ADAM;
+    throw new RuntimeException("Unknown optimizer: " + name);
+  }
+
+  // The rule of the given name with the parameters getParameters returned.
+  static Optimizer forName(String name, double[] parameters) {
+    Optimizer optimizer = forName(name);
+    if(Arrays.equals(parameters, optimizer.getParameters())) {
+      return optimizer;
+    }
+    if(name.equals("rmsprop") && parameters.length == 2) {
+      return rmsProp(parameters[0], parameters[1]);
+    }
+    if(name.equals("adam") && parameters.length == 3) {
+      return adam(parameters[0], parameters[1], parameters[2]);
+    }
+    throw new RuntimeException("Wrong parameters for optimizer: " + name);
+  }
+
+  public static Optimizer rmsProp(double decay, double epsilon) {
+    return new RMSProp(decay, epsilon);
+  }
+
+  public static Optimizer adam(double beta1, double beta2, double epsilon) {
+    return new Adam(beta1, beta2, epsilon);
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  abstract int getStateSize();
+
+  // The arguments of the factory method that made this rule, if any.
+  double[] getParameters() {
+    return new double[0];
+  }
+
+  // step counts the updates made so far, starting at 1.
+  abstract void update(double learningRate,
+                       double scale,
+                       double[] x,
+                       int xOffset,
+                       double momentum,
+                       double[] weight,
+                       double[][] state,
+                       int offset,
+                       int length,
+                       long step);
+
+  private static final class Momentum extends Optimizer {
+
+    Momentum() {
+      super("momentum");
+    }
+
+    int getStateSize() {
+      return 1;
+    }
+
+    void update(double learningRate,
+                double scale,
+                double[] x,
+                int xOffset,
+                double momentum,
+                double[] weight,
+                double[][] state,
+                int offset,
+                int length,
+                long step) {
+      KERNELS.update(learningRate * scale, x, xOffset, momentum,
+                     weight, state[0], offset, length);
+    }
+  }
+
+  private static final class Nesterov extends Optimizer {
+
+    Nesterov() {
+      super("nesterov");
+    }
+
+    int getStateSize() {
+      return 1;
+    }
+
+    void update(double learningRate,
+                double scale,
+                double[] x,
+                int xOffset,
+                double momentum,
+                double[] weight,
+                double[][] state,
+                int offset,
+                int length,
+                long step) {
+      double rate = learningRate * scale;
+      double[] velocity = state[0];
+      for(int k = 0; k < length; k++) {
+        double move = rate * x[xOffset + k];
+        double v = momentum * velocity[offset + k] + move;
+        velocity[offset + k] = v;
+        weight[offset + k] += momentum * v + move;
+      }
+    }
+  }
+
+  private static final class RMSProp extends Optimizer {
+
+    private double decay;
+    private double epsilon;
+
+    RMSProp(double decay, double epsilon) {
+      super("rmsprop");
+      this.decay = decay;
+      this.epsilon = epsilon;
+    }
+
+    int getStateSize() {
+      return 1;
+    }
+
+    double[] getParameters() {
+      return new double[] {decay, epsilon};
+    }
+
+    void update(double learningRate,
+                double scale,
+                double[] x,
+                int xOffset,
+                double momentum,
+                double[] weight,
+                double[][] state,
+                int offset,
+                int length,
+                long step) {
+      double[] meanSquare = state[0];
+      for(int k = 0; k < length; k++) {
+        double g = scale * x[xOffset + k];
+        double s = decay * meanSquare[offset + k] + (1.0 - decay) * g * g;
+        meanSquare[offset + k] = s;
+        weight[offset + k] += learningRate * g / (Math.sqrt(s) + epsilon);
+      }
+    }
+  }
+
+  private static final class Adam extends Optimizer {
+
+    private double beta1;
+    private double beta2;
+    private double epsilon;
+
+    Adam(double beta1, double beta2, double epsilon) {
+      super("adam");
+      this.beta1 = beta1;
+      this.beta2 = beta2;
+      this.epsilon = epsilon;
+    }
+
+    int getStateSize() {
+      return 2;
+    }
+
+    double[] getParameters() {
+      return new double[] {beta1, beta2, epsilon};
+    }
+
+    void update(double learningRate,
+                double scale,
+                double[] x,
+                int xOffset,
+                double momentum,
+                double[] weight,
+                double[][] state,
+                int offset,
+                int length,
+                long step) {
+      double[] mean = state[0];
+      double[] meanSquare = state[1];
+      double rate = learningRate / (1.0 - Math.pow(beta1, step));
+      double correction = 1.0 / (1.0 - Math.pow(beta2, step));
+      for(int k = 0; k < length; k++) {
+        double g = scale * x[xOffset + k];
+        double m = beta1 * mean[offset + k] + (1.0 - beta1) * g;
+        double s = beta2 * meanSquare[offset + k] + (1.0 - beta2) * g * g;
+        mean[offset + k] = m;
+        meanSquare[offset + k] = s;
+        weight[offset + k] += rate * m / (Math.sqrt(s * correction) + epsilon);
+      }
+    }
+  }
+}
@@ -0,0 +1,72 @@
+package neuralnet;
+
+import java.util.Arrays;
+import java.util.List;
+
+// Times code by the median of several rounds, each repeating it for at
+// least ROUND_NANOS, and times the two halves of per-example training on
+// their own. The passes themselves stay inside the package; only their
+// timings are returned.
+public final class PassBenchmark {
+
+  private static final long ROUND_NANOS = 100000000L;
+
+  private PassBenchmark() {
+  }
+
+  // Median time of one operation over the measured rounds.
+  public static double measure(Runnable pass,
+                               int operationsPerPass,
+                               int warmupRounds,
+                               int rounds) {
+    double[] samples = new double[rounds];
+    for(int r = -warmupRounds; r < rounds; r++) {
+      long passes = 0;
+      long start = System.nanoTime();
+      long elapsed;
+      do {
+        pass.run();
+        passes++;
+        elapsed = System.nanoTime() - start;
+      } while(elapsed < ROUND_NANOS);
+      if(r >= 0) {
+        samples[r] = (double) elapsed / (passes * operationsPerPass);
+      }
+    }
+    Arrays.sort(samples);
+    return samples[rounds / 2];
+  }
+
+  // Median time of the forward pass of one training example.
+  public static double forward(final FeedforwardNeuralNetwork net,
+                               final List <Example> examples,
+                               int warmupRounds,
+                               int rounds) {
+    return measure(new Runnable() {
+      public void run() {
+        for(Example example : examples) {
+          net.forwardPass(example);
+        }
+      }
+    }, examples.size(), warmupRounds, rounds);
+  }
+
+  // Median time of the fused backward and weight update pass of one
+  // training example. Each pass reuses the activations the last forward
+  // pass left, but takes its targets from every example in turn, so the
+  // weights keep moving as they do in training.
+  public static double backward(final FeedforwardNeuralNetwork net,
+                                final List <Example> examples,
+                                final double learningRate,
+                                final double momentum,
+                                int warmupRounds,
+                                int rounds) {
+    return measure(new Runnable() {
+      public void run() {
+        for(Example example : examples) {
+          net.backwardPass(example, learningRate, momentum);
+        }
+      }
+    }, examples.size(), warmupRounds, rounds);
+  }
+}
@@ -0,0 +1,115 @@
+package neuralnet;
+
+// Inference-only int8 copy of a trained FeedforwardNeuralNetwork. Each
+// layer's weights are rounded to multiples of one scale factor, the layer
+// inputs are rounded the same way per example, and the dot products are
+// accumulated in ints and rescaled once per neuron.
+public class QuantizedNeuralNetwork implements InferenceNetwork {
+
+  private static final int LEVELS = 127;
+  private static final Kernels KERNELS = Kernels.INSTANCE;
+
+  private int n;
+  private int[] size;
+  private Activation[] activation;
+  private byte[][] weight;
+  private double[] weightScale;
+  private ThreadLocal <double[]> scratch;
+  private ThreadLocal <byte[]> quantizedScratch;
+
+  QuantizedNeuralNetwork(int[] size,
+                         double[][] weight,
+                         Activation[] activation) {
+    this.activation = activation.clone();
+    n = size.length;
+    this.size = size.clone();
+    this.weight = new byte[n][];
+    weightScale = new double[n];
+    int widest = 0;
+    for(int i = 0; i < n; i++) {
+      widest = Math.max(widest, size[i]);
+      if(i == 0) {
+        this.weight[i] = new byte[0];
+        continue;
+      }
+      // The bias row never feeds a neuron, so it is not kept.
+      int length = (size[i] - 1) * size[i - 1];
+      double max = 0.0;
+      for(int p = 0; p < length; p++) {
+        max = Math.max(max, Math.abs(weight[i][p]));
+      }
+      weightScale[i] = max > 0.0 ? max / LEVELS : 1.0;
+      this.weight[i] = new byte[length];
+      for(int p = 0; p < length; p++) {
+        this.weight[i][p] = (byte) Math.round(weight[i][p] / weightScale[i]);
+      }
+    }
+
+    final int width = widest;
+    scratch = new ThreadLocal <double[]> () {
+      protected double[] initialValue() {
+        return new double[width];
+      }
+    };
+    quantizedScratch = new ThreadLocal <byte[]> () {
+      protected byte[] initialValue() {
+        return new byte[width];
+      }
+    };
+  }
+
+  public double[] computeOutput(double[] input) {
+    double[] output = new double[size[n - 1] - 1];
+    computeOutput(input, output);
+    return output;
+  }
+
+  public void computeOutput(double[] input, double[] output) {
+    if(input == null || input.length + 1 != size[0]) {
+      throw new RuntimeException("Wrong number of input elements.");
+    }
+    if(output == null || output.length != size[n - 1] - 1) {
+      throw new RuntimeException("Wrong number of output elements.");
+    }
+
+    double[] x = scratch.get();
+    byte[] q = quantizedScratch.get();
+    System.arraycopy(input, 0, x, 0, input.length);
+    x[input.length] = 1.0;
+
+    for(int i = 1; i < n; i++) {
+      int stride = size[i - 1];
+      double inputScale = quantize(x, q, stride);
+      double scale = inputScale * weightScale[i];
+      byte[] w = weight[i];
+      for(int j = 0; j < size[i] - 1; j++) {
+        x[j] = KERNELS.dot(w, j * stride, q, 0, stride) * scale;
+      }
+      activation[i - 1].activate(x, 0, size[i] - 1);
+      x[size[i] - 1] = 1.0;
+    }
+    System.arraycopy(x, 0, output, 0, output.length);
+  }
+
+  // Bytes held by the quantized weights and their scales.
+  public long getWeightBytes() {
+    long bytes = 0;
+    for(int i = 1; i < n; i++) {
+      bytes += weight[i].length + 8;
+    }
+    return bytes;
+  }
+
+  private double quantize(double[] x, byte[] q, int length) {
+    double max = 0.0;
+    for(int k = 0; k < length; k++) {
+      max = Math.max(max, Math.abs(x[k]));
+    }
+    double scale = max > 0.0 ? max / LEVELS : 1.0;
+    double inverse = 1.0 / scale;
+    for(int k = 0; k < length; k++) {
+      q[k] = (byte) Math.round(x[k] * inverse);
+    }
+    return scale;
+  }
+}
@@ -0,0 +1,81 @@
+package neuralnet;
+
+import java.nio.ByteBuffer;
+
+final class ScalarKernels extends Kernels {
+
+  String name() {
+    return "scalar";
+  }
+
+  double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+    double sum = 0.0;
+    for(int k = 0; k < length; k++) {
+      sum += a[aOffset + k] * b[bOffset + k];
+    }
+    return sum;
+  }
+
+  double dot(ByteBuffer a, int aIndex, double[] b, int bOffset, int length) {
+    double sum = 0.0;
+    for(int k = 0; k < length; k++) {
+      sum += a.getDouble(aIndex + 8 * k) * b[bOffset + k];
+    }
+    return sum;
+  }
+
+  int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+    int sum = 0;
+    for(int k = 0; k < length; k++) {
+      sum += a[aOffset + k] * b[bOffset + k];
+    }
+    return sum;
+  }
+
+  void axpy(double alpha,
+            double[] x,
+            int xOffset,
+            double[] y,
+            int yOffset,
+            int length) {
+    for(int k = 0; k < length; k++) {
+      y[yOffset + k] += alpha * x[xOffset + k];
+    }
+  }
+
+  void update(double rate,
+              double[] x,
+              int xOffset,
+              double momentum,
+              double[] weight,
+              double[] previousWeightDelta,
+              int offset,
+              int length) {
+    for(int k = 0; k < length; k++) {
+      double weightDelta = (rate * x[xOffset + k] +
+          momentum * previousWeightDelta[offset + k]);
+      weight[offset + k] += weightDelta;
+      previousWeightDelta[offset + k] = weightDelta;
+    }
+  }
+
+  void propagateAndUpdate(double delta,
+                          double rate,
+                          double[] x,
+                          double[] previousDelta,
+                          int xOffset,
+                          double momentum,
+                          double[] weight,
+                          double[] previousWeightDelta,
+                          int offset,
+                          int length) {
+    for(int k = 0; k < length; k++) {
+      double oldWeight = weight[offset + k];
+      previousDelta[xOffset + k] += delta * oldWeight;
+      double weightDelta = (rate * x[xOffset + k] +
+          momentum * previousWeightDelta[offset + k]);
+      weight[offset + k] = oldWeight + weightDelta;
+      previousWeightDelta[offset + k] = weightDelta;
+    }
+  }
+}
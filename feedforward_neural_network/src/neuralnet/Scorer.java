@@ -0,0 +1,8 @@
+package neuralnet;
+
+import java.util.List;
+
+public interface Scorer {
+
+  double score(InferenceNetwork network, List <Example> validationSet);
+}
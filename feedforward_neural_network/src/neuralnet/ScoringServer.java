@@ -0,0 +1,300 @@
+package neuralnet;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Scores inputs over HTTP on the loopback interface. POST /score takes one
+// comma-separated input vector and returns the comma-separated outputs;
+// GET /stats returns the request count, throughput, latency percentiles
+// and mean batch size since the last reset.
+//
+// Each request is handled on its own thread, which queues its input and
+// waits. Several batching threads drain the queue: each takes the oldest
+// queued request, adds the ones that arrive until the batch is full or that
+// request has waited for the latency budget, and scores them all with one
+// computeOutputs call, so one batch is scored while the next one fills.
+public class ScoringServer {
+
+  private static final int BACKLOG = 1024;
+  private static final int LATENCY_SAMPLES = 1 << 20;
+
+  static {
+    // The JDK server writes headers and body separately, so without this
+    // Nagle's algorithm holds each body until the client's delayed ACK.
+    if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  private FeedforwardNeuralNetwork net;
+  private int maxBatch;
+  private long budgetNanos;
+  private int inputSize;
+  private int outputSize;
+  private BlockingQueue <Request> queue;
+  private HttpServer server;
+  private ExecutorService handlers;
+  private int batcherCount;
+  private Thread[] batchers;
+  private LatencyRecorder latencies;
+  private AtomicLong batches;
+  private AtomicLong rows;
+
+  // One batching thread per processor.
+  public ScoringServer(FeedforwardNeuralNetwork net,
+                       int maxBatch,
+                       long budgetNanos) {
+    this(net, maxBatch, budgetNanos,
+         Runtime.getRuntime().availableProcessors());
+  }
+
+  public ScoringServer(FeedforwardNeuralNetwork net,
+                       int maxBatch,
+                       long budgetNanos,
+                       int batchers) {
+    if(maxBatch < 1) {
+      throw new RuntimeException("Batch size must be positive.");
+    }
+    if(batchers < 1) {
+      throw new RuntimeException("Number of batchers must be positive.");
+    }
+    this.net = net;
+    this.maxBatch = maxBatch;
+    this.budgetNanos = budgetNanos;
+    batcherCount = batchers;
+    inputSize = net.getInputSize();
+    outputSize = net.getOutputSize();
+    queue = new LinkedBlockingQueue <Request> ();
+    latencies = new LatencyRecorder(LATENCY_SAMPLES);
+    batches = new AtomicLong();
+    rows = new AtomicLong();
+  }
+
+  // Listens on the given port, or on a free one if it is 0, and returns it.
+  public int start(int port) throws IOException {
+    server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+        BACKLOG);
+    handlers = Executors.newCachedThreadPool(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "scoring-request");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    server.setExecutor(handlers);
+    server.createContext("/score", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        handleScore(exchange);
+      }
+    });
+    server.createContext("/stats", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, getStats());
+      }
+    });
+
+    batchers = new Thread[batcherCount];
+    for(int t = 0; t < batcherCount; t++) {
+      batchers[t] = new Thread(new Runnable() {
+        public void run() {
+          batch();
+        }
+      }, "scoring-batcher-" + t);
+      batchers[t].setDaemon(true);
+      batchers[t].start();
+    }
+    server.start();
+    return server.getAddress().getPort();
+  }
+
+  public void stop() {
+    server.stop(0);
+    for(Thread batcher : batchers) {
+      batcher.interrupt();
+    }
+    handlers.shutdownNow();
+  }
+
+  public LatencyRecorder getLatencies() {
+    return latencies;
+  }
+
+  public double getMeanBatchSize() {
+    long count = batches.get();
+    return count == 0 ? 0.0 : (double) rows.get() / count;
+  }
+
+  public void resetStats() {
+    latencies.reset();
+    batches.set(0);
+    rows.set(0);
+  }
+
+  public String getStats() {
+    return String.format(
+        "requests=%d%nthroughput=%.1f%np50_ms=%.3f%np99_ms=%.3f%n" +
+        "mean_batch=%.2f%n",
+        latencies.getCount(),
+        latencies.getThroughput(),
+        latencies.getPercentile(0.50) / 1e6,
+        latencies.getPercentile(0.99) / 1e6,
+        getMeanBatchSize());
+  }
+
+  private void handleScore(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    double[] input;
+    try {
+      input = parseInput(readBody(exchange));
+    }
+    catch(RuntimeException e) {
+      respond(exchange, 400, e.getMessage() + "\n");
+      return;
+    }
+
+    Request request = new Request(input, start);
+    queue.add(request);
+    double[] output;
+    try {
+      output = request.output.get();
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      respond(exchange, 503, "Server is stopping.\n");
+      return;
+    }
+    catch(ExecutionException e) {
+      respond(exchange, 500, e.getCause() + "\n");
+      return;
+    }
+
+    StringBuilder result = new StringBuilder();
+    for(int i = 0; i < output.length; i++) {
+      result.append(i == 0 ? "" : ",").append(output[i]);
+    }
+    respond(exchange, 200, result.append('\n').toString());
+    latencies.record(System.nanoTime() - start);
+  }
+
+  // Runs on each batching thread, with its own buffers.
+  private void batch() {
+    List <Request> batch = new ArrayList <Request> (maxBatch);
+    double[] inputs = new double[maxBatch * inputSize];
+    double[] outputs = new double[maxBatch * outputSize];
+    try {
+      while(true) {
+        Request first = queue.take();
+        batch.add(first);
+        long deadline = first.arrival + budgetNanos;
+        while(batch.size() < maxBatch) {
+          long wait = deadline - System.nanoTime();
+          Request next = wait > 0 ?
+              queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+          if(next == null) break;
+          batch.add(next);
+        }
+        score(batch, inputs, outputs);
+        batch.clear();
+      }
+    }
+    catch(InterruptedException e) {
+      for(Request request : batch) {
+        request.output.completeExceptionally(e);
+      }
+    }
+  }
+
+  private void score(List <Request> batch, double[] inputs, double[] outputs) {
+    int count = batch.size();
+    for(int b = 0; b < count; b++) {
+      System.arraycopy(batch.get(b).input, 0, inputs, b * inputSize,
+                       inputSize);
+    }
+    try {
+      net.computeOutputs(inputs, count, outputs);
+    }
+    catch(RuntimeException e) {
+      for(Request request : batch) {
+        request.output.completeExceptionally(e);
+      }
+      return;
+    }
+    batches.incrementAndGet();
+    rows.addAndGet(count);
+    for(int b = 0; b < count; b++) {
+      batch.get(b).output.complete(Arrays.copyOfRange(
+          outputs, b * outputSize, (b + 1) * outputSize));
+    }
+  }
+
+  private double[] parseInput(String body) {
+    String[] tokens = body.trim().split(",");
+    if(tokens.length != inputSize) {
+      throw new RuntimeException("Expected " + inputSize + " inputs.");
+    }
+    double[] input = new double[inputSize];
+    for(int i = 0; i < inputSize; i++) {
+      input[i] = Double.parseDouble(tokens[i].trim());
+    }
+    return input;
+  }
+
+  private static String readBody(HttpExchange exchange) throws IOException {
+    InputStream in = exchange.getRequestBody();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while((read = in.read(buffer)) != -1) {
+      body.write(buffer, 0, read);
+    }
+    in.close();
+    return body.toString("US-ASCII");
+  }
+
+  private static void respond(HttpExchange exchange,
+                              int status,
+                              String body) throws IOException {
+    byte[] bytes = body.getBytes("US-ASCII");
+    exchange.getResponseHeaders().set("Content-Type", "text/plain");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  private static final class Request {
+
+    private final double[] input;
+    private final long arrival;
+    private final CompletableFuture <double[]> output =
+        new CompletableFuture <double[]> ();
+
+    Request(double[] input, long arrival) {
+      this.input = input;
+      this.arrival = arrival;
+    }
+  }
+}
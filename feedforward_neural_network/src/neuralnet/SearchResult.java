@@ -0,0 +1,40 @@
+package neuralnet;
+
+public class SearchResult {
+
+  private Configuration configuration;
+  private double score;
+  private int iterations;
+  private double trainingMillis;
+
+  public SearchResult(Configuration configuration,
+                      double score,
+                      int iterations,
+                      double trainingMillis) {
+    this.configuration = configuration;
+    this.score = score;
+    this.iterations = iterations;
+    this.trainingMillis = trainingMillis;
+  }
+
+  public Configuration getConfiguration() {
+    return configuration;
+  }
+
+  public double getScore() {
+    return score;
+  }
+
+  public int getIterations() {
+    return iterations;
+  }
+
+  public double getTrainingMillis() {
+    return trainingMillis;
+  }
+
+  public String toString() {
+    return configuration + "," + iterations + "," + score + "," +
+        (long) trainingMillis;
+  }
+}
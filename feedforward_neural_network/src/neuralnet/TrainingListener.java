@@ -0,0 +1,6 @@
+package neuralnet;
+
+public interface TrainingListener {
+
+  void epochCompleted(EpochMetrics metrics);
+}
@@ -0,0 +1,166 @@
+package neuralnet;
+
+import java.nio.ByteBuffer;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.IntVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+final class VectorKernels extends Kernels {
+
+  private static final VectorSpecies <Double> SPECIES =
+      DoubleVector.SPECIES_PREFERRED;
+  private static final VectorSpecies <Integer> INT_SPECIES =
+      IntVector.SPECIES_PREFERRED;
+  // One byte per int lane, but no narrower than the smallest vector shape,
+  // 64 bits. With 128-bit vectors a byte vector thus widens to two int
+  // vectors, which the int8 dot product converts part by part.
+  private static final VectorSpecies <Byte> BYTE_SPECIES = VectorSpecies.of(
+      byte.class,
+      VectorShape.forBitSize(
+          Math.max(VectorShape.S_64_BIT.vectorBitSize(),
+                   INT_SPECIES.length() * Byte.SIZE)));
+  private static final int BYTE_PARTS =
+      BYTE_SPECIES.length() / INT_SPECIES.length();
+
+  String name() {
+    return "vector-" + SPECIES.vectorBitSize();
+  }
+
+  double dot(double[] a, int aOffset, double[] b, int bOffset, int length) {
+    int k = 0;
+    int bound = SPECIES.loopBound(length);
+    DoubleVector sum = DoubleVector.zero(SPECIES);
+    for(; k < bound; k += SPECIES.length()) {
+      DoubleVector va = DoubleVector.fromArray(SPECIES, a, aOffset + k);
+      DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + k);
+      sum = va.fma(vb, sum);
+    }
+    double result = sum.reduceLanes(VectorOperators.ADD);
+    for(; k < length; k++) {
+      result += a[aOffset + k] * b[bOffset + k];
+    }
+    return result;
+  }
+
+  double dot(ByteBuffer a, int aIndex, double[] b, int bOffset, int length) {
+    int k = 0;
+    int bound = SPECIES.loopBound(length);
+    DoubleVector sum = DoubleVector.zero(SPECIES);
+    for(; k < bound; k += SPECIES.length()) {
+      DoubleVector va =
+          DoubleVector.fromByteBuffer(SPECIES, a, aIndex + 8 * k, a.order());
+      DoubleVector vb = DoubleVector.fromArray(SPECIES, b, bOffset + k);
+      sum = va.fma(vb, sum);
+    }
+    double result = sum.reduceLanes(VectorOperators.ADD);
+    for(; k < length; k++) {
+      result += a.getDouble(aIndex + 8 * k) * b[bOffset + k];
+    }
+    return result;
+  }
+
+  int dot(byte[] a, int aOffset, byte[] b, int bOffset, int length) {
+    int k = 0;
+    int bound = BYTE_SPECIES.loopBound(length);
+    IntVector sum = IntVector.zero(INT_SPECIES);
+    for(; k < bound; k += BYTE_SPECIES.length()) {
+      ByteVector ba = ByteVector.fromArray(BYTE_SPECIES, a, aOffset + k);
+      ByteVector bb = ByteVector.fromArray(BYTE_SPECIES, b, bOffset + k);
+      for(int part = 0; part < BYTE_PARTS; part++) {
+        IntVector va = (IntVector) ba.convertShape(
+            VectorOperators.B2I, INT_SPECIES, part);
+        IntVector vb = (IntVector) bb.convertShape(
+            VectorOperators.B2I, INT_SPECIES, part);
+        sum = sum.add(va.mul(vb));
+      }
+    }
+    int result = sum.reduceLanes(VectorOperators.ADD);
+    for(; k < length; k++) {
+      result += a[aOffset + k] * b[bOffset + k];
+    }
+    return result;
+  }
+
+  void axpy(double alpha,
+            double[] x,
+            int xOffset,
+            double[] y,
+            int yOffset,
+            int length) {
+    int k = 0;
+    int bound = SPECIES.loopBound(length);
+    for(; k < bound; k += SPECIES.length()) {
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+      DoubleVector vy = DoubleVector.fromArray(SPECIES, y, yOffset + k);
+      vy.add(vx.mul(alpha)).intoArray(y, yOffset + k);
+    }
+    for(; k < length; k++) {
+      y[yOffset + k] += alpha * x[xOffset + k];
+    }
+  }
+
+  void update(double rate,
+              double[] x,
+              int xOffset,
+              double momentum,
+              double[] weight,
+              double[] previousWeightDelta,
+              int offset,
+              int length) {
+    int k = 0;
+    int bound = SPECIES.loopBound(length);
+    for(; k < bound; k += SPECIES.length()) {
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+      DoubleVector previous =
+          DoubleVector.fromArray(SPECIES, previousWeightDelta, offset + k);
+      DoubleVector weightDelta = vx.mul(rate).add(previous.mul(momentum));
+      DoubleVector.fromArray(SPECIES, weight, offset + k)
+          .add(weightDelta).intoArray(weight, offset + k);
+      weightDelta.intoArray(previousWeightDelta, offset + k);
+    }
+    for(; k < length; k++) {
+      double weightDelta = (rate * x[xOffset + k] +
+          momentum * previousWeightDelta[offset + k]);
+      weight[offset + k] += weightDelta;
+      previousWeightDelta[offset + k] = weightDelta;
+    }
+  }
+
+  void propagateAndUpdate(double delta,
+                          double rate,
+                          double[] x,
+                          double[] previousDelta,
+                          int xOffset,
+                          double momentum,
+                          double[] weight,
+                          double[] previousWeightDelta,
+                          int offset,
+                          int length) {
+    int k = 0;
+    int bound = SPECIES.loopBound(length);
+    for(; k < bound; k += SPECIES.length()) {
+      DoubleVector oldWeight =
+          DoubleVector.fromArray(SPECIES, weight, offset + k);
+      DoubleVector.fromArray(SPECIES, previousDelta, xOffset + k)
+          .add(oldWeight.mul(delta)).intoArray(previousDelta, xOffset + k);
+      DoubleVector vx = DoubleVector.fromArray(SPECIES, x, xOffset + k);
+      DoubleVector previous =
+          DoubleVector.fromArray(SPECIES, previousWeightDelta, offset + k);
+      DoubleVector weightDelta = vx.mul(rate).add(previous.mul(momentum));
+      oldWeight.add(weightDelta).intoArray(weight, offset + k);
+      weightDelta.intoArray(previousWeightDelta, offset + k);
+    }
+    for(; k < length; k++) {
+      double oldWeight = weight[offset + k];
+      previousDelta[xOffset + k] += delta * oldWeight;
+      double weightDelta = (rate * x[xOffset + k] +
+          momentum * previousWeightDelta[offset + k]);
+      weight[offset + k] = oldWeight + weightDelta;
+      previousWeightDelta[offset + k] = weightDelta;
+    }
+  }
+}
@@ -0,0 +1,89 @@
+package neuralnet.experiments;
+
+import java.lang.management.ManagementFactory;
+
+import java.util.Random;
+
+import neuralnet.FeedforwardNeuralNetwork;
+
+// Measures the bytes this thread allocates in warmed-up calls to
+// computeOutput(input, output) and computeOutputs, and checks that the
+// batched outputs equal the per-row ones. Exits with status 1 if either
+// call allocates or an output differs.
+public class AllocationCheck {
+
+  private static final int[] TOPOLOGY = {10, 32, 16, 5};
+  private static final int ROWS = 1000;
+  private static final int BATCH_CALLS = 1000;
+  private static final int SINGLE_CALLS = 100000;
+  private static final int WARMUP_ROUNDS = 5;
+
+  public static void main(String[] args) {
+    com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long thread = Thread.currentThread().getId();
+
+    FeedforwardNeuralNetwork net = new FeedforwardNeuralNetwork(TOPOLOGY);
+    int inputSize = net.getInputSize();
+    int outputSize = net.getOutputSize();
+    Random random = new Random(42);
+    double[] inputs = new double[ROWS * inputSize];
+    for(int i = 0; i < inputs.length; i++) {
+      inputs[i] = random.nextDouble();
+    }
+    double[] outputs = new double[ROWS * outputSize];
+    double[] input = new double[inputSize];
+    double[] output = new double[outputSize];
+
+    // Runs the same methods that are measured, so that both are compiled
+    // and the thread-local buffers exist before counting starts.
+    for(int r = 0; r < WARMUP_ROUNDS; r++) {
+      scoreBatches(net, inputs, outputs, BATCH_CALLS);
+      scoreRows(net, inputs, input, output, SINGLE_CALLS);
+    }
+
+    long start = threads.getThreadAllocatedBytes(thread);
+    scoreBatches(net, inputs, outputs, BATCH_CALLS);
+    long batchBytes = threads.getThreadAllocatedBytes(thread) - start;
+
+    start = threads.getThreadAllocatedBytes(thread);
+    scoreRows(net, inputs, input, output, SINGLE_CALLS);
+    long singleBytes = threads.getThreadAllocatedBytes(thread) - start;
+
+    int mismatches = 0;
+    for(int r = 0; r < ROWS; r++) {
+      System.arraycopy(inputs, r * inputSize, input, 0, inputSize);
+      net.computeOutput(input, output);
+      for(int j = 0; j < outputSize; j++) {
+        if(output[j] != outputs[r * outputSize + j]) mismatches++;
+      }
+    }
+
+    System.out.println("batch_bytes,single_bytes,mismatches");
+    System.out.println(batchBytes + "," + singleBytes + "," + mismatches);
+    if(batchBytes != 0 || singleBytes != 0 || mismatches != 0) {
+      System.exit(1);
+    }
+  }
+
+  private static void scoreBatches(FeedforwardNeuralNetwork net,
+                                   double[] inputs,
+                                   double[] outputs,
+                                   int calls) {
+    for(int c = 0; c < calls; c++) {
+      net.computeOutputs(inputs, ROWS, outputs);
+    }
+  }
+
+  private static void scoreRows(FeedforwardNeuralNetwork net,
+                                double[] inputs,
+                                double[] input,
+                                double[] output,
+                                int calls) {
+    for(int c = 0; c < calls; c++) {
+      System.arraycopy(
+          inputs, (c % ROWS) * input.length, input, 0, input.length);
+      net.computeOutput(input, output);
+    }
+  }
+}
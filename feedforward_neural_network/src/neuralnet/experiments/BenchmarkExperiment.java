@@ -0,0 +1,198 @@
+package neuralnet.experiments;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+import neuralnet.Activation;
+import neuralnet.Example;
+import neuralnet.FeedforwardNeuralNetwork;
+import neuralnet.Kernels;
+import neuralnet.PassBenchmark;
+
+// Times inference, the forward and the fused backward pass and full epochs
+// on the bundled data sets, each read and prepared before any timing, and
+// on synthetic networks of the sizes in -l.
+public class BenchmarkExperiment {
+
+  private static final int DEFAULT_WARMUP_ROUNDS = 5;
+  private static final int DEFAULT_ROUNDS = 10;
+  private static final int DEFAULT_EXAMPLES = 0;
+  private static final int SWEEP_EXAMPLES = 1024;
+  private static final double LEARNING_RATE = 0.1;
+  private static final double MOMENTUM = 0.1;
+
+  private static final String[] DATASETS = {"abalone", "wine", "wdbc"};
+  private static final String[] DATASET_TOPOLOGIES = {
+      "10-4-32", "13-4-3", "30-4-2"};
+  private static final String DEFAULT_ACTIVATION = "sigmoid";
+  private static final String DEFAULT_SWEEP = "64-64-16,64-256-16,64-1024-16";
+
+  public static void main(String[] args) {
+    String sweep = DEFAULT_SWEEP;
+    int examples = DEFAULT_EXAMPLES;
+    int warmupRounds = DEFAULT_WARMUP_ROUNDS;
+    int rounds = DEFAULT_ROUNDS;
+    String baselineFile = null;
+    String activation = DEFAULT_ACTIVATION;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      if(args[i].equals("-l")) {
+        sweep = args[i + 1];
+      }
+      else if(args[i].equals("-n")) {
+        examples = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-w")) {
+        warmupRounds = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-r")) {
+        rounds = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-c")) {
+        baselineFile = args[i + 1];
+      }
+      else if(args[i].equals("-s")) {
+        activation = args[i + 1];
+      }
+    }
+
+    Map <String, Double> baseline = baselineFile == null ?
+        null : readBaseline(baselineFile);
+    System.err.println("kernels," + Kernels.getName());
+    System.out.println("benchmark,dataset,topology,examples,nanos" +
+                       (baseline == null ? "" : ",change"));
+    for(int i = 0; i < DATASETS.length; i++) {
+      benchmark(DATASETS[i],
+                DATASET_TOPOLOGIES[i],
+                readDataSet(DATASETS[i]),
+                Activation.forName(activation),
+                warmupRounds,
+                rounds,
+                baseline);
+    }
+    for(String topology : sweep.split(",")) {
+      benchmark("synthetic",
+                topology,
+                syntheticExamples(parseTopology(topology),
+                                  examples > 0 ? examples : SWEEP_EXAMPLES),
+                Activation.forName(activation),
+                warmupRounds,
+                rounds,
+                baseline);
+    }
+  }
+
+  private static void benchmark(String dataset,
+                                String topology,
+                                final List <Example> examples,
+                                Activation activation,
+                                int warmupRounds,
+                                int rounds,
+                                Map <String, Double> baseline) {
+    int[] layers = parseTopology(topology);
+    final FeedforwardNeuralNetwork net = new FeedforwardNeuralNetwork(
+        layers, 42, activation, Activation.SIGMOID);
+    final double[] output = new double[layers[layers.length - 1]];
+    int size = examples.size();
+
+    double inference = PassBenchmark.measure(new Runnable() {
+      public void run() {
+        for(Example example : examples) {
+          net.computeOutput(example.getInput(), output);
+        }
+      }
+    }, size, warmupRounds, rounds);
+    double forward =
+        PassBenchmark.forward(net, examples, warmupRounds, rounds);
+    double backward = PassBenchmark.backward(
+        net, examples, LEARNING_RATE, MOMENTUM, warmupRounds, rounds);
+    double epoch = PassBenchmark.measure(new Runnable() {
+      public void run() {
+        net.train(examples, 1, LEARNING_RATE, MOMENTUM);
+      }
+    }, 1, warmupRounds, rounds);
+
+    String key = dataset + "," + topology + "," + size;
+    report("inference", key, inference, baseline);
+    report("forward", key, forward, baseline);
+    report("backward_update", key, backward, baseline);
+    report("epoch", key, epoch, baseline);
+  }
+
+  private static void report(String benchmark,
+                             String key,
+                             double nanos,
+                             Map <String, Double> baseline) {
+    String line = benchmark + "," + key + "," + String.format("%.1f", nanos);
+    if(baseline != null) {
+      Double previous = baseline.get(benchmark + "," + key);
+      line += previous == null ?
+          "," : String.format(",%+.1f%%", 100.0 * (nanos / previous - 1.0));
+    }
+    System.out.println(line);
+  }
+
+  private static Map <String, Double> readBaseline(String filename) {
+    Map <String, Double> baseline = new HashMap <String, Double> ();
+    try {
+      Scanner sc = new Scanner(new FileInputStream(filename));
+      sc.nextLine();
+      while(sc.hasNextLine()) {
+        String[] tokens = sc.nextLine().split(",");
+        baseline.put(tokens[0] + "," + tokens[1] + "," + tokens[2] + "," +
+                     tokens[3],
+                     Double.parseDouble(tokens[4]));
+      }
+    }
+    catch(IOException e) {
+      e.printStackTrace();
+    }
+    return baseline;
+  }
+
+  private static List <Example> readDataSet(String dataset) {
+    DataSetExperiment experiment;
+    if(dataset.equals("abalone")) {
+      experiment = new AbaloneExperiment();
+    }
+    else if(dataset.equals("wine")) {
+      experiment = new WineExperiment();
+    }
+    else {
+      experiment = new BreastCancerExperiment();
+    }
+    return experiment.readTrainingExamples("data/" + dataset + ".data");
+  }
+
+  private static int[] parseTopology(String topology) {
+    String[] tokens = topology.split("-");
+    int[] layers = new int[tokens.length];
+    for(int i = 0; i < tokens.length; i++) {
+      layers[i] = Integer.parseInt(tokens[i]);
+    }
+    return layers;
+  }
+
+  private static List <Example> syntheticExamples(int[] layers, int size) {
+    Random random = new Random(42);
+    int inputs = layers[0];
+    int outputs = layers[layers.length - 1];
+    List <Example> examples = new ArrayList <Example> ();
+    for(int i = 0; i < size; i++) {
+      double[] input = new double[inputs];
+      for(int j = 0; j < inputs; j++) {
+        input[j] = random.nextDouble();
+      }
+      double[] output = new double[outputs];
+      output[random.nextInt(outputs)] = 1.0;
+      examples.add(new Example(input, output));
+    }
+    return examples;
+  }
+}
@@ -0,0 +1,105 @@
+package neuralnet.experiments;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import neuralnet.FeedforwardNeuralNetwork;
+
+// Scores random inputs through one shared network from several threads at
+// once and compares every output with the single-threaded one. Exits with
+// status 1 if any output differs.
+public class ConcurrentInferenceCheck {
+
+  private static final int DEFAULT_THREADS =
+      Math.max(8, Runtime.getRuntime().availableProcessors());
+  private static final int DEFAULT_CALLS = 20000;
+  private static final int[] TOPOLOGY = {20, 64, 32, 5};
+  private static final int INPUTS = 500;
+
+  public static void main(String[] args) throws InterruptedException {
+    int threads = DEFAULT_THREADS;
+    int calls = DEFAULT_CALLS;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      if(args[i].equals("-t")) {
+        threads = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-n")) {
+        calls = Integer.parseInt(args[i + 1]);
+      }
+    }
+
+    FeedforwardNeuralNetwork net = new FeedforwardNeuralNetwork(TOPOLOGY);
+    Random random = new Random(42);
+    double[][] inputs = new double[INPUTS][TOPOLOGY[0]];
+    double[][] expected = new double[INPUTS][];
+    for(int i = 0; i < INPUTS; i++) {
+      for(int j = 0; j < inputs[i].length; j++) {
+        inputs[i][j] = random.nextDouble();
+      }
+      expected[i] = net.computeOutput(inputs[i]);
+    }
+
+    Worker[] workers = new Worker[threads];
+    Thread[] runners = new Thread[threads];
+    for(int t = 0; t < threads; t++) {
+      workers[t] = new Worker(net, inputs, expected, calls, t);
+      runners[t] = new Thread(workers[t]);
+    }
+    for(Thread runner : runners) {
+      runner.start();
+    }
+    long mismatches = 0;
+    for(int t = 0; t < threads; t++) {
+      runners[t].join();
+      mismatches += workers[t].mismatches;
+    }
+
+    System.out.println("threads,calls,mismatches");
+    System.out.println(threads + "," + (long) threads * calls + "," +
+                       mismatches);
+    if(mismatches != 0) {
+      System.exit(1);
+    }
+  }
+
+  private static class Worker implements Runnable {
+
+    private FeedforwardNeuralNetwork net;
+    private double[][] inputs;
+    private double[][] expected;
+    private int calls;
+    private Random random;
+    private long mismatches;
+
+    Worker(FeedforwardNeuralNetwork net,
+           double[][] inputs,
+           double[][] expected,
+           int calls,
+           int seed) {
+      this.net = net;
+      this.inputs = inputs;
+      this.expected = expected;
+      this.calls = calls;
+      this.random = new Random(seed);
+    }
+
+    public void run() {
+      double[] output = new double[expected[0].length];
+      for(int c = 0; c < calls; c++) {
+        int i = random.nextInt(inputs.length);
+        // Alternate between the allocating and the caller-buffer variant.
+        if(c % 2 == 0) {
+          if(!Arrays.equals(net.computeOutput(inputs[i]), expected[i])) {
+            mismatches++;
+          }
+        }
+        else {
+          net.computeOutput(inputs[i], output);
+          if(!Arrays.equals(output, expected[i])) {
+            mismatches++;
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,571 @@
+package neuralnet.experiments;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Scanner;
+
+import neuralnet.Activation;
+import neuralnet.Configuration;
+import neuralnet.EarlyStopping;
+import neuralnet.EpochMetrics;
+import neuralnet.Example;
+import neuralnet.ExampleStream;
+import neuralnet.FeedforwardNeuralNetwork;
+import neuralnet.FloatFeedforwardNeuralNetwork;
+import neuralnet.HyperparameterSearch;
+import neuralnet.InferenceNetwork;
+import neuralnet.LearningCurve;
+import neuralnet.Optimizer;
+import neuralnet.Scorer;
+import neuralnet.SearchResult;
+import neuralnet.TrainingListener;
+
+// The command line options and the training, search and learning curve
+// runs that the data set experiments share. An experiment supplies its
+// record format and, where they differ from the defaults, how the examples
+// are prepared before the split and which class each output index means.
+abstract class DataSetExperiment {
+
+  private static final int DEFAULT_HIDDEN_LAYERS = 1;
+  private static final int DEFAULT_HIDDEN_LAYER_SIZE = 4;
+  private static final int DEFAULT_ITERATIONS = 1000;
+  private static final double DEFAULT_LEARNING_RATE = 0.1;
+  private static final double DEFAULT_MOMENTUM = 0.1;
+  private static final int DEFAULT_BATCH_SIZE = 1;
+  private static final int DEFAULT_THREADS = 1;
+  private static final int DEFAULT_ASYNCHRONOUS_THREADS = 0;
+  private static final String DEFAULT_ACTIVATION = "sigmoid";
+  private static final String DEFAULT_PRECISION = "double";
+  private static final int DEFAULT_EVALUATION_INTERVAL = 10;
+  private static final int DEFAULT_PATIENCE = 0;
+  private static final int DEFAULT_METRICS_INTERVAL = 0;
+  private static final String DEFAULT_OPTIMIZER = "momentum";
+  private static final double DEFAULT_TARGET_ACCURACY = 0.0;
+  private static final String DEFAULT_ENCODING = "dense";
+  private static final int DEFAULT_CHECKPOINT_INTERVAL = 10;
+  private static final int HOLDOUT_FRACTION = 10;
+  private static final int DEFAULT_SEARCH_SIZE = 0;
+  private static final int[] SEARCH_HIDDEN_LAYER_SIZES = {2, 4, 8, 16, 32};
+  private static final double[] SEARCH_LEARNING_RATES = {0.05, 0.1, 0.2, 0.4};
+  private static final double[] SEARCH_MOMENTUMS = {0.0, 0.1, 0.5, 0.9};
+  private static final int SEARCH_MIN_ITERATIONS = 10;
+  private static final int DEFAULT_CURVE_START = 1;
+  private static final int DEFAULT_CURVE_STEP = 0;
+  private static final int DEFAULT_WARM_START_ITERATIONS = 0;
+
+  private int inputs;
+  private int outputs;
+  private int defaultTrainingExamples;
+
+  private String dataFile;
+  private int trainingExamples;
+  private int hiddenLayers = DEFAULT_HIDDEN_LAYERS;
+  private int iterations = DEFAULT_ITERATIONS;
+  private double learningRate = DEFAULT_LEARNING_RATE;
+  private double momentum = DEFAULT_MOMENTUM;
+  private int batchSize = DEFAULT_BATCH_SIZE;
+  private int threads = DEFAULT_THREADS;
+  private int asynchronousThreads = DEFAULT_ASYNCHRONOUS_THREADS;
+  private String activation = DEFAULT_ACTIVATION;
+  private String outputActivation = null;
+  private String precision = DEFAULT_PRECISION;
+  private int evaluationInterval = DEFAULT_EVALUATION_INTERVAL;
+  private int patience = DEFAULT_PATIENCE;
+  private int metricsInterval = DEFAULT_METRICS_INTERVAL;
+  private String optimizer = DEFAULT_OPTIMIZER;
+  private double targetAccuracy = DEFAULT_TARGET_ACCURACY;
+  private String encoding = DEFAULT_ENCODING;
+  private String checkpointFile = null;
+  private int checkpointInterval = DEFAULT_CHECKPOINT_INTERVAL;
+  private String modelFile = null;
+  private int searchSize = DEFAULT_SEARCH_SIZE;
+  private int curveStart = DEFAULT_CURVE_START;
+  private int curveEnd;
+  private int curveStep = DEFAULT_CURVE_STEP;
+  private int warmStartIterations = DEFAULT_WARM_START_ITERATIONS;
+  private Map <Integer, Integer> layerSizes =
+      new HashMap <Integer, Integer> ();
+  private Map <Integer, String> layerActivations =
+      new HashMap <Integer, String> ();
+
+  DataSetExperiment(String dataFile,
+                    int trainingExamples,
+                    int inputs,
+                    int outputs) {
+    this.dataFile = dataFile;
+    this.trainingExamples = trainingExamples;
+    this.inputs = inputs;
+    this.outputs = outputs;
+    defaultTrainingExamples = trainingExamples;
+    curveEnd = trainingExamples;
+  }
+
+  abstract Example parseExample(String record);
+
+  // Called with all examples before the first ones are taken for training.
+  void prepare(List <Example> examples) {
+  }
+
+  // The class that accuracy compares for an output index.
+  int getClass(int index) {
+    return index;
+  }
+
+  // Handles an option the shared ones do not and returns whether it did.
+  boolean parseOption(String name, String value) {
+    return false;
+  }
+
+  // A stream that reads the first trainingExamples records itself, to train
+  // from instead of a list of them, or null to train from the list.
+  ExampleStream openStream(String dataFile,
+                           int trainingExamples,
+                           boolean sparse) {
+    return null;
+  }
+
+  void run(String[] args) {
+    parseOptions(args);
+    int[] layers = getLayers();
+    Activation[] activations = getActivations();
+    boolean sparse = encoding.equals("sparse");
+
+    // Only the held-out records after the streamed ones are loaded, so
+    // memory does not grow with the training set.
+    if(curveStep == 0 && searchSize == 0 && targetAccuracy == 0.0) {
+      ExampleStream stream = openStream(dataFile, trainingExamples, sparse);
+      if(stream != null) {
+        if(asynchronousThreads > 0 ||
+           !(precision.equals("double") || precision.equals("int8"))) {
+          stream.close();
+          throw new RuntimeException(
+              "Only synchronous double and int8 training can stream.");
+        }
+        List <Example> validationSet = readFile(
+            dataFile, Math.max(trainingExamples, defaultTrainingExamples));
+        encode(validationSet, sparse);
+        System.out.println(testClassifier(
+            layers, activations, null, stream, validationSet));
+        return;
+      }
+    }
+
+    List <Example> all = readFile(dataFile, 0);
+    prepare(all);
+    encode(all, sparse);
+    List <Example> examples = new ArrayList <Example> ();
+    List <Example> validationSet = new ArrayList <Example> ();
+
+    for(int i = 0; i < trainingExamples; i++) {
+      examples.add(all.get(i));
+    }
+    for(int i = defaultTrainingExamples; i < all.size(); i++) {
+      validationSet.add(all.get(i));
+    }
+
+    if(curveStep > 0) {
+      learningCurve(
+          layers,
+          all.subList(0, Math.min(curveEnd, defaultTrainingExamples)),
+          validationSet);
+      return;
+    }
+    if(searchSize > 0) {
+      search(examples, validationSet);
+      return;
+    }
+    if(targetAccuracy > 0.0) {
+      System.out.println(
+          epochsToTarget(layers, activations, examples, validationSet));
+      return;
+    }
+
+    System.out.println(
+        testClassifier(layers, activations, examples, null, validationSet));
+  }
+
+  // The prepared examples the experiment trains on by default, for the
+  // benchmarks.
+  List <Example> readTrainingExamples(String dataFile) {
+    List <Example> all = readFile(dataFile, 0);
+    prepare(all);
+    return new ArrayList <Example> (all.subList(0, defaultTrainingExamples));
+  }
+
+  private void parseOptions(String[] args) {
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      if(args[i].equals("-f")) {
+        dataFile = args[i + 1];
+      }
+      else if(args[i].equals("-h")) {
+        hiddenLayers = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].startsWith("-n")) {
+        layerSizes.put(
+            Integer.parseInt(args[i].substring(2)),
+            Integer.parseInt(args[i + 1]));
+      }
+      else if(args[i].matches("-s[0-9]+")) {
+        layerActivations.put(
+            Integer.parseInt(args[i].substring(2)), args[i + 1]);
+      }
+      else if(args[i].equals("-r")) {
+        learningRate = Double.parseDouble(args[i + 1]);
+      }
+      else if(args[i].equals("-m")) {
+        momentum = Double.parseDouble(args[i + 1]);
+      }
+      else if(args[i].equals("-e")) {
+        trainingExamples = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-i")) {
+        iterations = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-b")) {
+        batchSize = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-t")) {
+        threads = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-a")) {
+        asynchronousThreads = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-s")) {
+        activation = args[i + 1];
+      }
+      else if(args[i].equals("-out")) {
+        outputActivation = args[i + 1];
+      }
+      else if(args[i].equals("-d")) {
+        precision = args[i + 1];
+      }
+      else if(args[i].equals("-k")) {
+        evaluationInterval = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-p")) {
+        patience = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-v")) {
+        metricsInterval = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-opt")) {
+        optimizer = args[i + 1];
+      }
+      else if(args[i].equals("-target")) {
+        targetAccuracy = Double.parseDouble(args[i + 1]);
+      }
+      else if(args[i].equals("-x")) {
+        encoding = args[i + 1];
+      }
+      else if(args[i].equals("-ck")) {
+        checkpointFile = args[i + 1];
+      }
+      else if(args[i].equals("-ci")) {
+        checkpointInterval = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-o")) {
+        modelFile = args[i + 1];
+      }
+      else if(args[i].equals("-g")) {
+        searchSize = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-start")) {
+        curveStart = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-end")) {
+        curveEnd = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-step")) {
+        curveStep = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-w")) {
+        warmStartIterations = Integer.parseInt(args[i + 1]);
+      }
+      else {
+        parseOption(args[i], args[i + 1]);
+      }
+    }
+    if(outputActivation == null) {
+      outputActivation = activation;
+    }
+  }
+
+  private int[] getLayers() {
+    int[] layers = new int[2 + hiddenLayers];
+    layers[0] = inputs;
+    layers[layers.length - 1] = outputs;
+    for(int i = 1; i <= hiddenLayers; i++) {
+      if(layerSizes.containsKey(i)) {
+        layers[i] = layerSizes.get(i);
+      }
+      else {
+        layers[i] = DEFAULT_HIDDEN_LAYER_SIZE;
+      }
+    }
+    return layers;
+  }
+
+  private Activation[] getActivations() {
+    Activation[] activations = new Activation[hiddenLayers + 1];
+    for(int i = 1; i <= hiddenLayers; i++) {
+      if(layerActivations.containsKey(i)) {
+        activations[i - 1] = Activation.forName(layerActivations.get(i));
+      }
+      else {
+        activations[i - 1] = Activation.forName(activation);
+      }
+    }
+    activations[hiddenLayers] = Activation.forName(outputActivation);
+    return activations;
+  }
+
+  private double testClassifier(int[] layers,
+                                Activation[] activations,
+                                List <Example> examples,
+                                ExampleStream stream,
+                                List <Example> validationSet) {
+    InferenceNetwork net;
+    if(precision.equals("double") || precision.equals("int8")) {
+      int remaining = iterations;
+      FeedforwardNeuralNetwork doubleNet = null;
+      if(checkpointFile != null && new File(checkpointFile).exists()) {
+        try {
+          doubleNet = FeedforwardNeuralNetwork.load(new File(checkpointFile));
+          remaining -= doubleNet.getEpochs();
+          System.err.println(
+              "Resuming after " + doubleNet.getEpochs() + " epochs.");
+        }
+        catch(IOException e) {
+          e.printStackTrace();
+        }
+      }
+      if(doubleNet == null) {
+        doubleNet = new FeedforwardNeuralNetwork(layers, 42, activations);
+        doubleNet.setOptimizer(Optimizer.forName(optimizer));
+      }
+      if(checkpointFile != null) {
+        doubleNet.setCheckpointing(
+            new File(checkpointFile), checkpointInterval);
+      }
+      if(metricsInterval > 0) {
+        doubleNet.setTrainingListener(new TrainingListener() {
+          public void epochCompleted(EpochMetrics metrics) {
+            if(metrics.getEpoch() % metricsInterval == 0) {
+              System.err.println(metrics);
+            }
+          }
+        });
+      }
+      if(asynchronousThreads > 0) {
+        doubleNet.trainAsynchronously(
+            examples, remaining, learningRate, momentum, asynchronousThreads);
+      }
+      else if(stream != null) {
+        try {
+          doubleNet.train(
+              stream, remaining, learningRate, momentum, batchSize, threads);
+        }
+        finally {
+          stream.close();
+        }
+      }
+      else if(patience > 0) {
+        trainWithEarlyStopping(doubleNet, examples, remaining);
+      }
+      else {
+        doubleNet.train(
+            examples, remaining, learningRate, momentum, batchSize, threads);
+      }
+      if(modelFile != null) {
+        try {
+          doubleNet.save(new File(modelFile));
+        }
+        catch(IOException e) {
+          e.printStackTrace();
+        }
+      }
+      net = precision.equals("int8") ? doubleNet.quantize() : doubleNet;
+    }
+    else {
+      FloatFeedforwardNeuralNetwork floatNet =
+          new FloatFeedforwardNeuralNetwork(
+              layers, 42, precision.equals("mixed"));
+      floatNet.train(examples, iterations, learningRate, momentum);
+      net = floatNet;
+    }
+
+    return accuracy(net, validationSet);
+  }
+
+  private void trainWithEarlyStopping(FeedforwardNeuralNetwork net,
+                                      List <Example> examples,
+                                      int remaining) {
+    int holdout = examples.size() / HOLDOUT_FRACTION;
+    EarlyStopping earlyStopping = new EarlyStopping(
+        examples.subList(examples.size() - holdout, examples.size()),
+        evaluationInterval,
+        patience,
+        0.0);
+    long start = System.nanoTime();
+    int epochs = net.train(
+        examples.subList(0, examples.size() - holdout),
+        remaining,
+        learningRate,
+        momentum,
+        batchSize,
+        threads,
+        earlyStopping);
+    long millis = (System.nanoTime() - start) / 1000000;
+    // The epochs not run are estimated at the mean time of those run.
+    System.err.println(String.format(
+        "Stopped after %d of %d epochs in %d ms, saving about %d ms.",
+        epochs,
+        remaining,
+        millis,
+        millis * (remaining - epochs) / Math.max(1, epochs)));
+  }
+
+  private void search(List <Example> examples,
+                      List <Example> validationSet) {
+    int[][] topologies = new int[SEARCH_HIDDEN_LAYER_SIZES.length][];
+    for(int i = 0; i < topologies.length; i++) {
+      topologies[i] = new int[] {inputs, SEARCH_HIDDEN_LAYER_SIZES[i], outputs};
+    }
+    List <Configuration> configurations = HyperparameterSearch.sample(
+        HyperparameterSearch.grid(
+            topologies, SEARCH_LEARNING_RATES, SEARCH_MOMENTUMS, batchSize),
+        searchSize,
+        42);
+
+    HyperparameterSearch search = new HyperparameterSearch(
+        examples,
+        validationSet,
+        getScorer(),
+        Runtime.getRuntime().availableProcessors());
+
+    System.out.println(
+        "layers,learning_rate,momentum,batch_size,iterations,percent,millis");
+    for(SearchResult result :
+        search.search(configurations, iterations, SEARCH_MIN_ITERATIONS)) {
+      System.out.println(result);
+    }
+  }
+
+  // Epochs until the validation accuracy, checked every evaluationInterval
+  // epochs, reaches the target, or -1 if it does not within iterations.
+  private int epochsToTarget(int[] layers,
+                             Activation[] activations,
+                             List <Example> examples,
+                             List <Example> validationSet) {
+    FeedforwardNeuralNetwork net =
+        new FeedforwardNeuralNetwork(layers, 42, activations);
+    net.setOptimizer(Optimizer.forName(optimizer));
+    int epochs = 0;
+    while(epochs < iterations) {
+      int epochsToRun = Math.min(evaluationInterval, iterations - epochs);
+      net.train(examples, epochsToRun, learningRate, momentum, batchSize,
+                threads);
+      epochs += epochsToRun;
+      if(accuracy(net, validationSet) >= targetAccuracy) {
+        return epochs;
+      }
+    }
+    return -1;
+  }
+
+  private void learningCurve(int[] layers,
+                             List <Example> examples,
+                             List <Example> validationSet) {
+    int[] sizes =
+        new int[Math.max(0, (examples.size() - curveStart) / curveStep + 1)];
+    for(int i = 0; i < sizes.length; i++) {
+      sizes[i] = curveStart + i * curveStep;
+    }
+
+    LearningCurve curve = new LearningCurve(
+        examples,
+        validationSet,
+        getScorer(),
+        Runtime.getRuntime().availableProcessors());
+    double[] percents;
+    if(warmStartIterations > 0) {
+      percents = curve.computeWarmStarted(layers,
+                                          sizes,
+                                          iterations,
+                                          warmStartIterations,
+                                          learningRate,
+                                          momentum,
+                                          batchSize);
+    }
+    else {
+      percents = curve.compute(
+          layers, sizes, iterations, learningRate, momentum, batchSize);
+    }
+
+    System.out.println("examples,percent");
+    for(int i = 0; i < sizes.length; i++) {
+      System.out.println(String.format("%d,%.4f", sizes[i], percents[i]));
+    }
+  }
+
+  private Scorer getScorer() {
+    return new Scorer() {
+      public double score(InferenceNetwork network,
+                          List <Example> validationSet) {
+        return accuracy(network, validationSet);
+      }
+    };
+  }
+
+  private double accuracy(InferenceNetwork net,
+                          List <Example> validationSet) {
+    int correct = 0;
+    for(Example example : validationSet) {
+      double[] output = net.computeOutput(example.getInput());
+      if(getClass(getMaxIndex(output)) ==
+         getClass(getMaxIndex(example.getOutput()))) correct++;
+    }
+
+    return (double)correct / validationSet.size();
+  }
+
+  private void encode(List <Example> examples, boolean sparse) {
+    if(!sparse) return;
+    for(int i = 0; i < examples.size(); i++) {
+      examples.set(i, Example.sparse(examples.get(i).getInput(),
+                                     examples.get(i).getOutput()));
+    }
+  }
+
+  // The examples of the records from the given one on.
+  private List <Example> readFile(String filename, int from) {
+    List <Example> examples = new ArrayList <Example> ();
+    try {
+      Scanner sc = new Scanner(new FileInputStream(filename));
+      for(int i = 0; i < from && sc.hasNextLine(); i++) {
+        sc.nextLine();
+      }
+      while(sc.hasNextLine()) {
+        examples.add(parseExample(sc.nextLine()));
+      }
+    }
+    catch(IOException e) {
+      e.printStackTrace();
+    }
+    return examples;
+  }
+
+  private static int getMaxIndex(double[] x) {
+    int index = 0;
+    for(int i = 0; i < x.length; i++) {
+      if(x[i] > x[index]) index = i;
+    }
+    return index;
+  }
+}
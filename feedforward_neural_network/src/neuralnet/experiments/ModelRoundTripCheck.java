@@ -0,0 +1,234 @@
+package neuralnet.experiments;
+
+import java.io.File;
+import java.io.IOException;
+
+import java.nio.file.Files;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import neuralnet.Activation;
+import neuralnet.EarlyStopping;
+import neuralnet.EpochMetrics;
+import neuralnet.Example;
+import neuralnet.FeedforwardNeuralNetwork;
+import neuralnet.InferenceNetwork;
+import neuralnet.Optimizer;
+import neuralnet.TrainingListener;
+
+// Saves trained networks, loads and maps them back and checks that they
+// compute the same outputs, and, where the file keeps the training state,
+// that they keep training identically. Resumes early stopping from a
+// checkpoint of an interrupted run and from its last checkpoint and checks
+// that both end where the uninterrupted run does. Then loads and maps every
+// truncation of a model file and checks that each fails with an
+// IOException. Exits with status 1 on any failure.
+public class ModelRoundTripCheck {
+
+  private static final int[] TOPOLOGY = {8, 12, 6, 3};
+  private static final int EXAMPLES = 100;
+  private static final int ITERATIONS = 10;
+  private static final int FURTHER_ITERATIONS = 5;
+  private static final double LEARNING_RATE = 0.3;
+  private static final double MOMENTUM = 0.4;
+  private static final int EARLY_STOPPING_ITERATIONS = 60;
+  private static final int EVALUATION_INTERVAL = 2;
+  private static final int PATIENCE = 3;
+  private static final int CRASH_EPOCH = 7;
+
+  public static void main(String[] args) throws IOException {
+    List <Example> examples = syntheticExamples(2);
+    File file = File.createTempFile("model", ".ffnn");
+    File checkpoint = File.createTempFile("checkpoint", ".ffnn");
+    int failures = 0;
+    try {
+      Activation[] activations = {
+          Activation.TABLE_SIGMOID, Activation.TANH, Activation.SOFTMAX};
+      FeedforwardNeuralNetwork net =
+          new FeedforwardNeuralNetwork(TOPOLOGY, 5, activations);
+      net.train(examples, ITERATIONS, LEARNING_RATE, MOMENTUM);
+
+      net.save(file);
+      failures += checkMapped("weights", net, file, examples);
+      failures += check("weights", net, FeedforwardNeuralNetwork.load(file),
+                        examples, false);
+      net.save(file, true);
+      failures += checkMapped("momentum", net, file, examples);
+      failures += check("momentum", net, FeedforwardNeuralNetwork.load(file),
+                        examples, true);
+
+      FeedforwardNeuralNetwork adam =
+          new FeedforwardNeuralNetwork(TOPOLOGY, 5, activations);
+      adam.setOptimizer(Optimizer.adam(0.8, 0.99, 1e-6));
+      adam.setCheckpointing(checkpoint, ITERATIONS);
+      adam.train(examples, ITERATIONS, LEARNING_RATE, MOMENTUM);
+      adam.setCheckpointing(null, 0);
+      failures += checkMapped("checkpoint", adam, checkpoint, examples);
+      FeedforwardNeuralNetwork resumed =
+          FeedforwardNeuralNetwork.load(checkpoint);
+      if(resumed.getEpochs() != ITERATIONS) {
+        System.out.println("checkpoint,epochs," + resumed.getEpochs());
+        failures++;
+      }
+      failures += check("checkpoint", adam, resumed, examples, true);
+
+      failures += checkEarlyStopping(activations, examples, checkpoint);
+
+      failures += checkTruncations(checkpoint, file);
+    }
+    finally {
+      file.delete();
+      checkpoint.delete();
+    }
+
+    if(failures != 0) {
+      System.exit(1);
+    }
+  }
+
+  // Compares the outputs, and with training also those after further
+  // epochs on both networks.
+  private static int check(String name,
+                           FeedforwardNeuralNetwork original,
+                           FeedforwardNeuralNetwork copy,
+                           List <Example> examples,
+                           boolean training) {
+    int mismatches = countMismatches(original, copy, examples);
+    if(training) {
+      original.train(examples, FURTHER_ITERATIONS, LEARNING_RATE, MOMENTUM);
+      copy.train(examples, FURTHER_ITERATIONS, LEARNING_RATE, MOMENTUM);
+      mismatches += countMismatches(original, copy, examples);
+    }
+    System.out.println(name + ",mismatches," + mismatches);
+    return mismatches == 0 ? 0 : 1;
+  }
+
+  // Random labels, so the validation error soon stops improving.
+  private static int checkEarlyStopping(Activation[] activations,
+                                        List <Example> examples,
+                                        File checkpoint)
+      throws IOException {
+    EarlyStopping earlyStopping = new EarlyStopping(
+        syntheticExamples(3), EVALUATION_INTERVAL, PATIENCE, 0.0);
+    FeedforwardNeuralNetwork uninterrupted =
+        new FeedforwardNeuralNetwork(TOPOLOGY, 5, activations);
+    uninterrupted.setOptimizer(Optimizer.rmsProp(0.8, 1e-6));
+    int trained = uninterrupted.train(
+        examples, EARLY_STOPPING_ITERATIONS, LEARNING_RATE, MOMENTUM, 1, 1,
+        earlyStopping);
+
+    FeedforwardNeuralNetwork interrupted =
+        new FeedforwardNeuralNetwork(TOPOLOGY, 5, activations);
+    interrupted.setOptimizer(Optimizer.rmsProp(0.8, 1e-6));
+    interrupted.setCheckpointing(checkpoint, EVALUATION_INTERVAL);
+    interrupted.setTrainingListener(new TrainingListener() {
+      public void epochCompleted(EpochMetrics metrics) {
+        if(metrics.getEpoch() == CRASH_EPOCH) {
+          throw new IllegalStateException("Simulated crash.");
+        }
+      }
+    });
+    try {
+      interrupted.train(
+          examples, EARLY_STOPPING_ITERATIONS, LEARNING_RATE, MOMENTUM, 1, 1,
+          earlyStopping);
+    }
+    catch(IllegalStateException e) {
+      // Expected at CRASH_EPOCH.
+    }
+
+    FeedforwardNeuralNetwork resumed =
+        FeedforwardNeuralNetwork.load(checkpoint);
+    int before = resumed.getEpochs();
+    resumed.setCheckpointing(checkpoint, EVALUATION_INTERVAL);
+    int after = resumed.train(
+        examples, EARLY_STOPPING_ITERATIONS - before, LEARNING_RATE, MOMENTUM,
+        1, 1, earlyStopping);
+    FeedforwardNeuralNetwork stopped =
+        FeedforwardNeuralNetwork.load(checkpoint);
+    int again = stopped.train(
+        examples, EARLY_STOPPING_ITERATIONS - stopped.getEpochs(),
+        LEARNING_RATE, MOMENTUM, 1, 1, earlyStopping);
+
+    int mismatches = countMismatches(uninterrupted, resumed, examples) +
+        countMismatches(uninterrupted, stopped, examples);
+    if(before + after != trained ||
+       again != 0 ||
+       resumed.getEpochs() != uninterrupted.getEpochs() ||
+       stopped.getEpochs() != uninterrupted.getEpochs()) {
+      System.out.println(String.format(
+          "early_stopping,epochs,%d+%d,%d,%d,%d",
+          before, after, again, trained, uninterrupted.getEpochs()));
+      mismatches++;
+    }
+    System.out.println("early_stopping,mismatches," + mismatches);
+    return mismatches == 0 ? 0 : 1;
+  }
+
+  private static int checkMapped(String name,
+                                 FeedforwardNeuralNetwork original,
+                                 File file,
+                                 List <Example> examples)
+      throws IOException {
+    int mismatches = countMismatches(
+        original, FeedforwardNeuralNetwork.map(file), examples);
+    System.out.println(name + ",mapped_mismatches," + mismatches);
+    return mismatches == 0 ? 0 : 1;
+  }
+
+  private static int countMismatches(InferenceNetwork original,
+                                     InferenceNetwork copy,
+                                     List <Example> examples) {
+    int mismatches = 0;
+    for(Example example : examples) {
+      if(!Arrays.equals(original.computeOutput(example.getInput()),
+                        copy.computeOutput(example.getInput()))) {
+        mismatches++;
+      }
+    }
+    return mismatches;
+  }
+
+  private static int checkTruncations(File model, File scratch)
+      throws IOException {
+    byte[] bytes = Files.readAllBytes(model.toPath());
+    int accepted = 0;
+    for(int length = 0; length < bytes.length; length++) {
+      Files.write(scratch.toPath(), Arrays.copyOf(bytes, length));
+      try {
+        FeedforwardNeuralNetwork.load(scratch);
+        accepted++;
+      }
+      catch(IOException e) {
+        // Expected for every truncated file.
+      }
+      try {
+        FeedforwardNeuralNetwork.map(scratch);
+        accepted++;
+      }
+      catch(IOException e) {
+        // Expected for every truncated file.
+      }
+    }
+    System.out.println("truncations,accepted," + accepted);
+    return accepted == 0 ? 0 : 1;
+  }
+
+  private static List <Example> syntheticExamples(int seed) {
+    Random random = new Random(seed);
+    List <Example> examples = new ArrayList <Example> ();
+    for(int i = 0; i < EXAMPLES; i++) {
+      double[] input = new double[TOPOLOGY[0]];
+      for(int j = 0; j < input.length; j++) {
+        input[j] = random.nextDouble();
+      }
+      double[] output = new double[TOPOLOGY[TOPOLOGY.length - 1]];
+      output[random.nextInt(output.length)] = 1.0;
+      examples.add(new Example(input, output));
+    }
+    return examples;
+  }
+}
@@ -0,0 +1,98 @@
+package neuralnet.experiments;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import neuralnet.Example;
+import neuralnet.FeedforwardNeuralNetwork;
+
+public class ParallelTrainingExperiment {
+
+  private static final int DEFAULT_THREADS =
+      Runtime.getRuntime().availableProcessors();
+  private static final int DEFAULT_BATCH_SIZE = 256;
+  private static final int DEFAULT_ITERATIONS = 5;
+  private static final double DEFAULT_LEARNING_RATE = 0.1;
+  private static final double DEFAULT_MOMENTUM = 0.1;
+
+  private static final int[] ABALONE_TOPOLOGY = {10, 4, 32};
+  private static final int ABALONE_EXAMPLES = 3133;
+  private static final int[] WIDE_TOPOLOGY = {64, 512, 512, 16};
+  private static final int WIDE_EXAMPLES = 4096;
+
+  public static void main(String[] args) {
+    int maxThreads = DEFAULT_THREADS;
+    int batchSize = DEFAULT_BATCH_SIZE;
+    int iterations = DEFAULT_ITERATIONS;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      if(args[i].equals("-t")) {
+        maxThreads = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-b")) {
+        batchSize = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-i")) {
+        iterations = Integer.parseInt(args[i + 1]);
+      }
+    }
+
+    System.out.println("topology,threads,millis,speedup");
+    speedupCurve("abalone", ABALONE_TOPOLOGY, ABALONE_EXAMPLES,
+                 maxThreads, batchSize, iterations);
+    speedupCurve("wide", WIDE_TOPOLOGY, WIDE_EXAMPLES,
+                 maxThreads, batchSize, iterations);
+  }
+
+  private static void speedupCurve(String name,
+                                   int[] layers,
+                                   int size,
+                                   int maxThreads,
+                                   int batchSize,
+                                   int iterations) {
+    List <Example> examples = syntheticExamples(layers, size);
+    timeTraining(layers, examples, batchSize, iterations, maxThreads);
+
+    double baseline = 0.0;
+    for(int threads = 1; threads <= maxThreads; threads++) {
+      double millis =
+          timeTraining(layers, examples, batchSize, iterations, threads);
+      if(threads == 1) baseline = millis;
+      System.out.println(name + "," + threads + "," + (long) millis + "," +
+                         String.format("%.2f", baseline / millis));
+    }
+  }
+
+  private static double timeTraining(int[] layers,
+                                     List <Example> examples,
+                                     int batchSize,
+                                     int iterations,
+                                     int threads) {
+    FeedforwardNeuralNetwork net = new FeedforwardNeuralNetwork(layers);
+    long start = System.nanoTime();
+    net.train(examples,
+              iterations,
+              DEFAULT_LEARNING_RATE,
+              DEFAULT_MOMENTUM,
+              batchSize,
+              threads);
+    return (System.nanoTime() - start) / 1e6;
+  }
+
+  private static List <Example> syntheticExamples(int[] layers, int size) {
+    Random random = new Random(42);
+    int inputs = layers[0];
+    int outputs = layers[layers.length - 1];
+    List <Example> examples = new ArrayList <Example> ();
+    for(int i = 0; i < size; i++) {
+      double[] input = new double[inputs];
+      for(int j = 0; j < inputs; j++) {
+        input[j] = random.nextDouble();
+      }
+      double[] output = new double[outputs];
+      output[random.nextInt(outputs)] = 1.0;
+      examples.add(new Example(input, output));
+    }
+    return examples;
+  }
+}
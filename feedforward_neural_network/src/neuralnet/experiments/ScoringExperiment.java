@@ -0,0 +1,193 @@
+package neuralnet.experiments;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import java.util.Random;
+
+import neuralnet.FeedforwardNeuralNetwork;
+import neuralnet.Kernels;
+import neuralnet.LatencyRecorder;
+import neuralnet.ScoringServer;
+
+// Starts a ScoringServer on the loopback interface and drives it with
+// closed-loop clients, each sending its next request as soon as the last
+// one is answered. With -c 0 it only serves, on the port given by -p.
+public class ScoringExperiment {
+
+  private static final String DEFAULT_TOPOLOGY = "10-4-32";
+  private static final int DEFAULT_PORT = 0;
+  private static final int DEFAULT_BATCH_SIZE = 32;
+  private static final int DEFAULT_BUDGET_MICROS = 0;
+  private static final int DEFAULT_BATCHERS =
+      Runtime.getRuntime().availableProcessors();
+  private static final int DEFAULT_CLIENTS = 16;
+  private static final int DEFAULT_WARMUP_SECONDS = 3;
+  private static final int DEFAULT_SECONDS = 10;
+  private static final int LATENCY_SAMPLES = 1 << 20;
+
+  public static void main(String[] args) throws Exception {
+    String modelFile = null;
+    String topology = DEFAULT_TOPOLOGY;
+    int port = DEFAULT_PORT;
+    int batchSize = DEFAULT_BATCH_SIZE;
+    int budgetMicros = DEFAULT_BUDGET_MICROS;
+    int batchers = DEFAULT_BATCHERS;
+    int clients = DEFAULT_CLIENTS;
+    int warmupSeconds = DEFAULT_WARMUP_SECONDS;
+    int seconds = DEFAULT_SECONDS;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      if(args[i].equals("-m")) {
+        modelFile = args[i + 1];
+      }
+      else if(args[i].equals("-l")) {
+        topology = args[i + 1];
+      }
+      else if(args[i].equals("-p")) {
+        port = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-b")) {
+        batchSize = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-u")) {
+        budgetMicros = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-t")) {
+        batchers = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-c")) {
+        clients = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-w")) {
+        warmupSeconds = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-s")) {
+        seconds = Integer.parseInt(args[i + 1]);
+      }
+    }
+
+    FeedforwardNeuralNetwork net = modelFile == null ?
+        new FeedforwardNeuralNetwork(parseTopology(topology)) :
+        FeedforwardNeuralNetwork.load(new File(modelFile));
+    ScoringServer server =
+        new ScoringServer(net, batchSize, budgetMicros * 1000L, batchers);
+    port = server.start(port);
+    System.err.println("kernels," + Kernels.getName());
+    if(clients == 0) {
+      System.err.println("Serving on http://127.0.0.1:" + port + "/score");
+      Thread.currentThread().join();
+    }
+
+    // Keep one idle connection per client so requests reuse them.
+    System.setProperty("http.maxConnections", String.valueOf(clients));
+    URL url = new URL("http://127.0.0.1:" + port + "/score");
+    LatencyRecorder latencies = new LatencyRecorder(LATENCY_SAMPLES);
+    Client[] workers = new Client[clients];
+    Thread[] runners = new Thread[clients];
+    for(int t = 0; t < clients; t++) {
+      workers[t] = new Client(url, net.getInputSize(), t, latencies);
+      runners[t] = new Thread(workers[t]);
+      runners[t].start();
+    }
+
+    Thread.sleep(warmupSeconds * 1000L);
+    latencies.reset();
+    server.resetStats();
+    Thread.sleep(seconds * 1000L);
+    double throughput = latencies.getThroughput();
+    for(Client worker : workers) {
+      worker.running = false;
+    }
+    for(Thread runner : runners) {
+      runner.join();
+    }
+    server.stop();
+    for(Client worker : workers) {
+      if(worker.failure != null) {
+        throw worker.failure;
+      }
+    }
+
+    System.out.println("clients,batch,budget_us,batchers,requests_per_second," +
+                       "p50_ms,p99_ms,server_p50_ms,server_p99_ms,mean_batch");
+    System.out.println(String.format(
+        "%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.2f",
+        clients,
+        batchSize,
+        budgetMicros,
+        batchers,
+        throughput,
+        latencies.getPercentile(0.50) / 1e6,
+        latencies.getPercentile(0.99) / 1e6,
+        server.getLatencies().getPercentile(0.50) / 1e6,
+        server.getLatencies().getPercentile(0.99) / 1e6,
+        server.getMeanBatchSize()));
+  }
+
+  private static int[] parseTopology(String topology) {
+    String[] tokens = topology.split("-");
+    int[] layers = new int[tokens.length];
+    for(int i = 0; i < tokens.length; i++) {
+      layers[i] = Integer.parseInt(tokens[i]);
+    }
+    return layers;
+  }
+
+  private static class Client implements Runnable {
+
+    private URL url;
+    private int inputs;
+    private Random random;
+    private LatencyRecorder latencies;
+    private volatile boolean running = true;
+    private IOException failure;
+
+    Client(URL url, int inputs, int seed, LatencyRecorder latencies) {
+      this.url = url;
+      this.inputs = inputs;
+      this.random = new Random(seed);
+      this.latencies = latencies;
+    }
+
+    public void run() {
+      byte[] buffer = new byte[4096];
+      try {
+        while(running) {
+          StringBuilder body = new StringBuilder();
+          for(int i = 0; i < inputs; i++) {
+            body.append(i == 0 ? "" : ",").append(random.nextDouble());
+          }
+          byte[] bytes = body.toString().getBytes("US-ASCII");
+
+          long start = System.nanoTime();
+          HttpURLConnection connection =
+              (HttpURLConnection) url.openConnection();
+          connection.setRequestMethod("POST");
+          connection.setDoOutput(true);
+          connection.setFixedLengthStreamingMode(bytes.length);
+          OutputStream out = connection.getOutputStream();
+          out.write(bytes);
+          out.close();
+          if(connection.getResponseCode() != 200) {
+            throw new IOException(
+                "Scoring failed: " + connection.getResponseCode());
+          }
+          InputStream in = connection.getInputStream();
+          while(in.read(buffer) != -1) {
+            // Only the latency is measured, so the outputs are dropped.
+          }
+          in.close();
+          latencies.record(System.nanoTime() - start);
+        }
+      }
+      catch(IOException e) {
+        failure = e;
+      }
+    }
+  }
+}
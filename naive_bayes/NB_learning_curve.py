@@ -22,20 +22,19 @@ def main():
     elif sys.argv[i] == '-plot':
       plot = True if sys.argv[i + 1] == 'True' else False
 
-  examples = start
   x = []
   y = []
+  output = os.popen('./run_%s_experiment.sh -start %d -end %d -step %d' %
+      (name.lower(), start, end, step), 'r')
+  header = output.readline()
   if not plot:
-    print 'examples,percent'
-  while examples <= end:
-    result = float(os.popen(
-        './run_%s_experiment.sh -e %d' %
-        (name.lower(), examples), 'r').readline())
+    print header.strip()
+  for line in output:
+    examples, result = line.strip().split(',')
     if not plot:
-      print '%d,%.4f' % (examples, result)
-    x.append(examples)
-    y.append(result)
-    examples += step
+      print line.strip()
+    x.append(int(examples))
+    y.append(float(result))
 
   if plot:
     pyplot.plot(x, y)
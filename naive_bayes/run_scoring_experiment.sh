@@ -0,0 +1,2 @@
+#!/bin/bash
+java -cp build/classes naivebayes.experiments.ScoringExperiment $@
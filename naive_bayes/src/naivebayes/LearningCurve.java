@@ -0,0 +1,63 @@
+package naivebayes;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+public class LearningCurve {
+
+  private List <Example> examples;
+  private List <Example> validationSet;
+  private Scorer scorer;
+  private int threads;
+
+  public LearningCurve(List <Example> examples,
+                       List <Example> validationSet,
+                       Scorer scorer,
+                       int threads) {
+    if(threads < 1) {
+      throw new RuntimeException("Number of threads must be positive.");
+    }
+    this.examples = examples;
+    this.validationSet = validationSet;
+    this.scorer = scorer;
+    this.threads = threads;
+  }
+
+  public double[] compute(int[] sizes) {
+    List <Callable <Double> > tasks = new ArrayList <Callable <Double> > ();
+    for(final int size : sizes) {
+      tasks.add(new Callable <Double> () {
+        public Double call() {
+          NaiveBayesClassifier classifier =
+              new NaiveBayesClassifier(examples.subList(0, size));
+          return scorer.score(classifier, validationSet);
+        }
+      });
+    }
+
+    double[] scores = new double[sizes.length];
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    try {
+      List <Future <Double> > futures = pool.invokeAll(tasks);
+      for(int i = 0; i < scores.length; i++) {
+        scores[i] = futures.get(i).get();
+      }
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new RuntimeException("Interrupted while training.", e);
+    }
+    catch(ExecutionException e) {
+      throw new RuntimeException("Training failed.", e.getCause());
+    }
+    finally {
+      pool.shutdown();
+    }
+    return scores;
+  }
+}
@@ -0,0 +1,8 @@
+package naivebayes;
+
+import java.util.List;
+
+public interface Scorer {
+
+  double score(NaiveBayesClassifier classifier, List <Example> validationSet);
+}
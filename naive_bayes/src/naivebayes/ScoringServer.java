@@ -0,0 +1,338 @@
+package naivebayes;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Classifies inputs over HTTP on the loopback interface. POST /score takes
+// the comma-separated categorical and then continuous inputs of one example
+// and returns its class; GET /stats returns the request count, throughput,
+// latency percentiles and mean batch size since the last reset.
+//
+// With a batch size of 1, each request is classified on the thread that
+// handles it. Otherwise that thread queues its inputs and waits, and
+// several batching threads drain the queue: each takes the oldest queued
+// request, adds the ones that arrive until the batch is full or that
+// request has waited for the latency budget, and classifies them all with
+// one classifyAll call.
+public class ScoringServer {
+
+  private static final int BACKLOG = 1024;
+  private static final int LATENCY_SAMPLES = 1 << 20;
+
+  static {
+    // The JDK server writes headers and body separately, so without this
+    // Nagle's algorithm holds each body until the client's delayed ACK.
+    if(System.getProperty("sun.net.httpserver.nodelay") == null) {
+      System.setProperty("sun.net.httpserver.nodelay", "true");
+    }
+  }
+
+  private NaiveBayesClassifier classifier;
+  private int maxBatch;
+  private long budgetNanos;
+  private int batcherCount;
+  private int nCategoricalInputs;
+  private int nContinuousInputs;
+  private BlockingQueue <Request> queue;
+  private HttpServer server;
+  private ExecutorService handlers;
+  private Thread[] batchers;
+  private LatencyRecorder latencies;
+  private AtomicLong batches;
+  private AtomicLong rows;
+
+  public ScoringServer(NaiveBayesClassifier classifier) {
+    this(classifier, 1, 0L);
+  }
+
+  // One batching thread per processor.
+  public ScoringServer(NaiveBayesClassifier classifier,
+                       int maxBatch,
+                       long budgetNanos) {
+    this(classifier, maxBatch, budgetNanos,
+         Runtime.getRuntime().availableProcessors());
+  }
+
+  public ScoringServer(NaiveBayesClassifier classifier,
+                       int maxBatch,
+                       long budgetNanos,
+                       int batchers) {
+    if(maxBatch < 1) {
+      throw new RuntimeException("Batch size must be positive.");
+    }
+    if(batchers < 1) {
+      throw new RuntimeException("Number of batchers must be positive.");
+    }
+    this.classifier = classifier;
+    this.maxBatch = maxBatch;
+    this.budgetNanos = budgetNanos;
+    batcherCount = maxBatch == 1 ? 0 : batchers;
+    nCategoricalInputs = classifier.getCategoricalInputCount();
+    nContinuousInputs = classifier.getContinuousInputCount();
+    queue = new LinkedBlockingQueue <Request> ();
+    latencies = new LatencyRecorder(LATENCY_SAMPLES);
+    batches = new AtomicLong();
+    rows = new AtomicLong();
+  }
+
+  // Listens on the given port, or on a free one if it is 0, and returns it.
+  public int start(int port) throws IOException {
+    server = HttpServer.create(
+        new InetSocketAddress(InetAddress.getLoopbackAddress(), port),
+        BACKLOG);
+    handlers = Executors.newCachedThreadPool(new ThreadFactory() {
+      public Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, "scoring-request");
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    server.setExecutor(handlers);
+    server.createContext("/score", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        handleScore(exchange);
+      }
+    });
+    server.createContext("/stats", new HttpHandler() {
+      public void handle(HttpExchange exchange) throws IOException {
+        respond(exchange, 200, getStats());
+      }
+    });
+
+    batchers = new Thread[batcherCount];
+    for(int t = 0; t < batcherCount; t++) {
+      batchers[t] = new Thread(new Runnable() {
+        public void run() {
+          batch();
+        }
+      }, "scoring-batcher-" + t);
+      batchers[t].setDaemon(true);
+      batchers[t].start();
+    }
+    server.start();
+    return server.getAddress().getPort();
+  }
+
+  public void stop() {
+    server.stop(0);
+    for(Thread batcher : batchers) {
+      batcher.interrupt();
+    }
+    handlers.shutdownNow();
+  }
+
+  public LatencyRecorder getLatencies() {
+    return latencies;
+  }
+
+  public double getMeanBatchSize() {
+    long count = batches.get();
+    return count == 0 ? 0.0 : (double) rows.get() / count;
+  }
+
+  public void resetStats() {
+    latencies.reset();
+    batches.set(0);
+    rows.set(0);
+  }
+
+  public String getStats() {
+    return String.format(
+        "requests=%d%nthroughput=%.1f%np50_ms=%.3f%np99_ms=%.3f%n" +
+        "mean_batch=%.2f%n",
+        latencies.getCount(),
+        latencies.getThroughput(),
+        latencies.getPercentile(0.50) / 1e6,
+        latencies.getPercentile(0.99) / 1e6,
+        getMeanBatchSize());
+  }
+
+  private void handleScore(HttpExchange exchange) throws IOException {
+    long start = System.nanoTime();
+    Request request;
+    try {
+      request = parseRequest(readBody(exchange), start);
+    }
+    catch(RuntimeException e) {
+      respond(exchange, 400, e.getMessage() + "\n");
+      return;
+    }
+
+    String output;
+    try {
+      output = batcherCount == 0 ? classify(request) : enqueue(request);
+    }
+    catch(InterruptedException e) {
+      Thread.currentThread().interrupt();
+      respond(exchange, 503, "Server is stopping.\n");
+      return;
+    }
+    catch(ExecutionException e) {
+      respond(exchange, 500, e.getCause() + "\n");
+      return;
+    }
+
+    respond(exchange, 200, output + "\n");
+    latencies.record(System.nanoTime() - start);
+  }
+
+  // Classifies the request on the calling thread as a batch of one.
+  private String classify(Request request) throws ExecutionException {
+    String output;
+    try {
+      output = classifier.classify(
+          request.categoricalInputs,
+          request.continuousInputs).getValue();
+    }
+    catch(RuntimeException e) {
+      throw new ExecutionException(e);
+    }
+    batches.incrementAndGet();
+    rows.incrementAndGet();
+    return output;
+  }
+
+  private String enqueue(Request request)
+      throws InterruptedException, ExecutionException {
+    queue.add(request);
+    return request.output.get();
+  }
+
+  // Runs on each batching thread, with its own lists.
+  private void batch() {
+    List <Request> batch = new ArrayList <Request> (maxBatch);
+    List <List <CategoricalAttribute> > catInputs =
+        new ArrayList <List <CategoricalAttribute> > (maxBatch);
+    List <List <ContinuousAttribute> > conInputs =
+        new ArrayList <List <ContinuousAttribute> > (maxBatch);
+    try {
+      while(true) {
+        Request first = queue.take();
+        batch.add(first);
+        long deadline = first.arrival + budgetNanos;
+        while(batch.size() < maxBatch) {
+          long wait = deadline - System.nanoTime();
+          Request next = wait > 0 ?
+              queue.poll(wait, TimeUnit.NANOSECONDS) : queue.poll();
+          if(next == null) break;
+          batch.add(next);
+        }
+        classify(batch, catInputs, conInputs);
+        batch.clear();
+        catInputs.clear();
+        conInputs.clear();
+      }
+    }
+    catch(InterruptedException e) {
+      for(Request request : batch) {
+        request.output.completeExceptionally(e);
+      }
+    }
+  }
+
+  private void classify(List <Request> batch,
+                        List <List <CategoricalAttribute> > catInputs,
+                        List <List <ContinuousAttribute> > conInputs) {
+    for(Request request : batch) {
+      catInputs.add(request.categoricalInputs);
+      conInputs.add(request.continuousInputs);
+    }
+    List <CategoricalAttribute> outputs;
+    try {
+      outputs = classifier.classifyAll(catInputs, conInputs);
+    }
+    catch(RuntimeException e) {
+      for(Request request : batch) {
+        request.output.completeExceptionally(e);
+      }
+      return;
+    }
+    batches.incrementAndGet();
+    rows.addAndGet(batch.size());
+    for(int b = 0; b < batch.size(); b++) {
+      batch.get(b).output.complete(outputs.get(b).getValue());
+    }
+  }
+
+  private Request parseRequest(String body, long arrival) {
+    String[] tokens = body.trim().split(",");
+    if(tokens.length != nCategoricalInputs + nContinuousInputs) {
+      throw new RuntimeException(
+          "Expected " + nCategoricalInputs + " categorical and " +
+          nContinuousInputs + " continuous inputs.");
+    }
+    List <CategoricalAttribute> catInputs =
+        new ArrayList <CategoricalAttribute> ();
+    List <ContinuousAttribute> conInputs =
+        new ArrayList <ContinuousAttribute> ();
+    for(int i = 0; i < nCategoricalInputs; i++) {
+      catInputs.add(new CategoricalAttribute(tokens[i].trim()));
+    }
+    for(int i = nCategoricalInputs; i < tokens.length; i++) {
+      conInputs.add(
+          new ContinuousAttribute(Double.parseDouble(tokens[i].trim())));
+    }
+    return new Request(catInputs, conInputs, arrival);
+  }
+
+  private static String readBody(HttpExchange exchange) throws IOException {
+    InputStream in = exchange.getRequestBody();
+    ByteArrayOutputStream body = new ByteArrayOutputStream();
+    byte[] buffer = new byte[4096];
+    int read;
+    while((read = in.read(buffer)) != -1) {
+      body.write(buffer, 0, read);
+    }
+    in.close();
+    return body.toString("US-ASCII");
+  }
+
+  private static void respond(HttpExchange exchange,
+                              int status,
+                              String body) throws IOException {
+    byte[] bytes = body.getBytes("US-ASCII");
+    exchange.getResponseHeaders().set("Content-Type", "text/plain");
+    exchange.sendResponseHeaders(status, bytes.length);
+    OutputStream out = exchange.getResponseBody();
+    out.write(bytes);
+    out.close();
+  }
+
+  private static final class Request {
+
+    private final List <CategoricalAttribute> categoricalInputs;
+    private final List <ContinuousAttribute> continuousInputs;
+    private final long arrival;
+    private final CompletableFuture <String> output =
+        new CompletableFuture <String> ();
+
+    Request(List <CategoricalAttribute> categoricalInputs,
+            List <ContinuousAttribute> continuousInputs,
+            long arrival) {
+      this.categoricalInputs = categoricalInputs;
+      this.continuousInputs = continuousInputs;
+      this.arrival = arrival;
+    }
+  }
+}
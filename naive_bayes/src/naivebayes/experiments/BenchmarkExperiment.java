@@ -0,0 +1,227 @@
+package naivebayes.experiments;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+
+import naivebayes.CategoricalAttribute;
+import naivebayes.ContinuousAttribute;
+import naivebayes.Example;
+import naivebayes.NaiveBayesClassifier;
+
+public class BenchmarkExperiment {
+
+  private static final int DEFAULT_WARMUP_ROUNDS = 5;
+  private static final int DEFAULT_ROUNDS = 10;
+  private static final int DEFAULT_EXAMPLES = 0;
+  private static final int SWEEP_EXAMPLES = 1024;
+  private static final long ROUND_NANOS = 100000000L;
+  private static final int CATEGORY_VALUES = 3;
+  private static final int BATCH_SIZE = 32;
+
+  // Shapes are categorical inputs - continuous inputs - classes.
+  private static final String[] DATASETS = {"abalone", "wine", "wdbc"};
+  private static final String[] DATASET_SHAPES = {"1-7-29", "0-13-3", "0-30-2"};
+  private static final int[] DATASET_EXAMPLES = {3133, 100, 300};
+  private static final String DEFAULT_SWEEP = "0-16-4,0-64-4,8-64-16";
+
+  // The classify results are folded into this and printed, so the JIT
+  // cannot drop the calls as dead code.
+  private static long checksum;
+
+  public static void main(String[] args) {
+    String sweep = DEFAULT_SWEEP;
+    int examples = DEFAULT_EXAMPLES;
+    int warmupRounds = DEFAULT_WARMUP_ROUNDS;
+    int rounds = DEFAULT_ROUNDS;
+    String baselineFile = null;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      if(args[i].equals("-l")) {
+        sweep = args[i + 1];
+      }
+      else if(args[i].equals("-n")) {
+        examples = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-w")) {
+        warmupRounds = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-r")) {
+        rounds = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-c")) {
+        baselineFile = args[i + 1];
+      }
+    }
+
+    Map <String, Double> baseline = baselineFile == null ?
+        null : readBaseline(baselineFile);
+    System.out.println("benchmark,dataset,shape,examples,nanos" +
+                       (baseline == null ? "" : ",change"));
+    for(int i = 0; i < DATASETS.length; i++) {
+      benchmark(DATASETS[i],
+                DATASET_SHAPES[i],
+                examples > 0 ? examples : DATASET_EXAMPLES[i],
+                warmupRounds,
+                rounds,
+                baseline);
+    }
+    for(String shape : sweep.split(",")) {
+      benchmark("synthetic",
+                shape,
+                examples > 0 ? examples : SWEEP_EXAMPLES,
+                warmupRounds,
+                rounds,
+                baseline);
+    }
+    System.err.println("checksum," + checksum);
+  }
+
+  private static void benchmark(String dataset,
+                                String shape,
+                                int size,
+                                int warmupRounds,
+                                int rounds,
+                                Map <String, Double> baseline) {
+    final List <Example> examples = syntheticExamples(shape, size);
+    final NaiveBayesClassifier classifier =
+        new NaiveBayesClassifier(examples);
+
+    double train = measure(new Runnable() {
+      public void run() {
+        new NaiveBayesClassifier(examples);
+      }
+    }, 1, warmupRounds, rounds);
+    double classify = measure(new Runnable() {
+      public void run() {
+        for(Example example : examples) {
+          checksum += classifier.classify(
+              example.getCategoricalInputs(),
+              example.getContinuousInputs()).getValue().hashCode();
+        }
+      }
+    }, size, warmupRounds, rounds);
+
+    final List <List <List <CategoricalAttribute> > > catBatches =
+        new ArrayList <List <List <CategoricalAttribute> > > ();
+    final List <List <List <ContinuousAttribute> > > conBatches =
+        new ArrayList <List <List <ContinuousAttribute> > > ();
+    for(int from = 0; from < size; from += BATCH_SIZE) {
+      List <List <CategoricalAttribute> > catInputs =
+          new ArrayList <List <CategoricalAttribute> > ();
+      List <List <ContinuousAttribute> > conInputs =
+          new ArrayList <List <ContinuousAttribute> > ();
+      for(Example example :
+              examples.subList(from, Math.min(size, from + BATCH_SIZE))) {
+        catInputs.add(example.getCategoricalInputs());
+        conInputs.add(example.getContinuousInputs());
+      }
+      catBatches.add(catInputs);
+      conBatches.add(conInputs);
+    }
+    double classifyBatch = measure(new Runnable() {
+      public void run() {
+        for(int b = 0; b < catBatches.size(); b++) {
+          for(CategoricalAttribute output : classifier.classifyAll(
+                  catBatches.get(b), conBatches.get(b))) {
+            checksum += output.getValue().hashCode();
+          }
+        }
+      }
+    }, size, warmupRounds, rounds);
+
+    String key = dataset + "," + shape + "," + size;
+    report("train", key, train, baseline);
+    report("classify", key, classify, baseline);
+    report("classify_batch", key, classifyBatch, baseline);
+  }
+
+  // Median time of one operation over the measured rounds. Each round
+  // repeats the pass until it has run for at least ROUND_NANOS.
+  private static double measure(Runnable pass,
+                                int operationsPerPass,
+                                int warmupRounds,
+                                int rounds) {
+    double[] samples = new double[rounds];
+    for(int r = -warmupRounds; r < rounds; r++) {
+      long passes = 0;
+      long start = System.nanoTime();
+      long elapsed;
+      do {
+        pass.run();
+        passes++;
+        elapsed = System.nanoTime() - start;
+      } while(elapsed < ROUND_NANOS);
+      if(r >= 0) {
+        samples[r] = (double) elapsed / (passes * operationsPerPass);
+      }
+    }
+    Arrays.sort(samples);
+    return samples[rounds / 2];
+  }
+
+  private static void report(String benchmark,
+                             String key,
+                             double nanos,
+                             Map <String, Double> baseline) {
+    String line = benchmark + "," + key + "," + String.format("%.1f", nanos);
+    if(baseline != null) {
+      Double previous = baseline.get(benchmark + "," + key);
+      line += previous == null ?
+          "," : String.format(",%+.1f%%", 100.0 * (nanos / previous - 1.0));
+    }
+    System.out.println(line);
+  }
+
+  private static Map <String, Double> readBaseline(String filename) {
+    Map <String, Double> baseline = new HashMap <String, Double> ();
+    try {
+      Scanner sc = new Scanner(new FileInputStream(filename));
+      sc.nextLine();
+      while(sc.hasNextLine()) {
+        String[] tokens = sc.nextLine().split(",");
+        baseline.put(tokens[0] + "," + tokens[1] + "," + tokens[2] + "," +
+                     tokens[3],
+                     Double.parseDouble(tokens[4]));
+      }
+    }
+    catch(IOException e) {
+      e.printStackTrace();
+    }
+    return baseline;
+  }
+
+  private static List <Example> syntheticExamples(String shape, int size) {
+    String[] tokens = shape.split("-");
+    int categorical = Integer.parseInt(tokens[0]);
+    int continuous = Integer.parseInt(tokens[1]);
+    int classes = Integer.parseInt(tokens[2]);
+
+    Random random = new Random(42);
+    List <Example> examples = new ArrayList <Example> ();
+    for(int i = 0; i < size; i++) {
+      List <CategoricalAttribute> catInputs =
+          new ArrayList <CategoricalAttribute> ();
+      List <ContinuousAttribute> conInputs =
+          new ArrayList <ContinuousAttribute> ();
+      for(int j = 0; j < categorical; j++) {
+        catInputs.add(new CategoricalAttribute(
+            String.valueOf(random.nextInt(CATEGORY_VALUES))));
+      }
+      for(int j = 0; j < continuous; j++) {
+        conInputs.add(new ContinuousAttribute(random.nextDouble()));
+      }
+      examples.add(new Example(
+          catInputs,
+          conInputs,
+          new CategoricalAttribute(String.valueOf(random.nextInt(classes)))));
+    }
+    return examples;
+  }
+}
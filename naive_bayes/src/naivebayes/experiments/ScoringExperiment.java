@@ -0,0 +1,230 @@
+package naivebayes.experiments;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import naivebayes.CategoricalAttribute;
+import naivebayes.ContinuousAttribute;
+import naivebayes.Example;
+import naivebayes.LatencyRecorder;
+import naivebayes.NaiveBayesClassifier;
+import naivebayes.ScoringServer;
+
+// Starts a ScoringServer on the loopback interface and drives it with
+// closed-loop clients, each sending its next request as soon as the last
+// one is answered. With -c 0 it only serves, on the port given by -p.
+public class ScoringExperiment {
+
+  private static final String DEFAULT_SHAPE = "1-7-29";
+  private static final int SYNTHETIC_EXAMPLES = 3133;
+  private static final int CATEGORY_VALUES = 3;
+  private static final int DEFAULT_PORT = 0;
+  private static final int DEFAULT_BATCH_SIZE = 1;
+  private static final int DEFAULT_BUDGET_MICROS = 0;
+  private static final int DEFAULT_BATCHERS =
+      Runtime.getRuntime().availableProcessors();
+  private static final int DEFAULT_CLIENTS = 16;
+  private static final int DEFAULT_WARMUP_SECONDS = 3;
+  private static final int DEFAULT_SECONDS = 10;
+  private static final int LATENCY_SAMPLES = 1 << 20;
+
+  public static void main(String[] args) throws Exception {
+    String modelFile = null;
+    String shape = DEFAULT_SHAPE;
+    int port = DEFAULT_PORT;
+    int batchSize = DEFAULT_BATCH_SIZE;
+    int budgetMicros = DEFAULT_BUDGET_MICROS;
+    int batchers = DEFAULT_BATCHERS;
+    int clients = DEFAULT_CLIENTS;
+    int warmupSeconds = DEFAULT_WARMUP_SECONDS;
+    int seconds = DEFAULT_SECONDS;
+    for(int i = 0; i + 1 < args.length; i += 2) {
+      if(args[i].equals("-m")) {
+        modelFile = args[i + 1];
+      }
+      else if(args[i].equals("-l")) {
+        shape = args[i + 1];
+      }
+      else if(args[i].equals("-p")) {
+        port = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-b")) {
+        batchSize = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-u")) {
+        budgetMicros = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-t")) {
+        batchers = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-c")) {
+        clients = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-w")) {
+        warmupSeconds = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-s")) {
+        seconds = Integer.parseInt(args[i + 1]);
+      }
+    }
+
+    NaiveBayesClassifier classifier = modelFile == null ?
+        new NaiveBayesClassifier(syntheticExamples(shape)) :
+        NaiveBayesClassifier.load(new File(modelFile));
+    ScoringServer server = new ScoringServer(
+        classifier, batchSize, budgetMicros * 1000L, batchers);
+    port = server.start(port);
+    if(clients == 0) {
+      System.err.println("Serving on http://127.0.0.1:" + port + "/score");
+      Thread.currentThread().join();
+    }
+
+    // Keep one idle connection per client so requests reuse them.
+    System.setProperty("http.maxConnections", String.valueOf(clients));
+    URL url = new URL("http://127.0.0.1:" + port + "/score");
+    LatencyRecorder latencies = new LatencyRecorder(LATENCY_SAMPLES);
+    Client[] workers = new Client[clients];
+    Thread[] runners = new Thread[clients];
+    for(int t = 0; t < clients; t++) {
+      workers[t] = new Client(url, classifier, t, latencies);
+      runners[t] = new Thread(workers[t]);
+      runners[t].start();
+    }
+
+    Thread.sleep(warmupSeconds * 1000L);
+    latencies.reset();
+    server.resetStats();
+    Thread.sleep(seconds * 1000L);
+    double throughput = latencies.getThroughput();
+    for(Client worker : workers) {
+      worker.running = false;
+    }
+    for(Thread runner : runners) {
+      runner.join();
+    }
+    server.stop();
+    for(Client worker : workers) {
+      if(worker.failure != null) {
+        throw worker.failure;
+      }
+    }
+
+    System.out.println("clients,batch,budget_us,batchers,requests_per_second," +
+                       "p50_ms,p99_ms,server_p50_ms,server_p99_ms,mean_batch");
+    System.out.println(String.format(
+        "%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.2f",
+        clients,
+        batchSize,
+        budgetMicros,
+        batchers,
+        throughput,
+        latencies.getPercentile(0.50) / 1e6,
+        latencies.getPercentile(0.99) / 1e6,
+        server.getLatencies().getPercentile(0.50) / 1e6,
+        server.getLatencies().getPercentile(0.99) / 1e6,
+        server.getMeanBatchSize()));
+  }
+
+  // Shapes are categorical inputs - continuous inputs - classes.
+  private static List <Example> syntheticExamples(String shape) {
+    String[] tokens = shape.split("-");
+    int categorical = Integer.parseInt(tokens[0]);
+    int continuous = Integer.parseInt(tokens[1]);
+    int classes = Integer.parseInt(tokens[2]);
+
+    Random random = new Random(42);
+    List <Example> examples = new ArrayList <Example> ();
+    for(int i = 0; i < SYNTHETIC_EXAMPLES; i++) {
+      List <CategoricalAttribute> catInputs =
+          new ArrayList <CategoricalAttribute> ();
+      List <ContinuousAttribute> conInputs =
+          new ArrayList <ContinuousAttribute> ();
+      for(int j = 0; j < categorical; j++) {
+        catInputs.add(new CategoricalAttribute(
+            String.valueOf(random.nextInt(CATEGORY_VALUES))));
+      }
+      for(int j = 0; j < continuous; j++) {
+        conInputs.add(new ContinuousAttribute(random.nextDouble()));
+      }
+      examples.add(new Example(
+          catInputs,
+          conInputs,
+          new CategoricalAttribute(String.valueOf(random.nextInt(classes)))));
+    }
+    return examples;
+  }
+
+  private static class Client implements Runnable {
+
+    private URL url;
+    private List <List <String> > categoricalValues;
+    private int continuousInputs;
+    private Random random;
+    private LatencyRecorder latencies;
+    private volatile boolean running = true;
+    private IOException failure;
+
+    Client(URL url,
+           NaiveBayesClassifier classifier,
+           int seed,
+           LatencyRecorder latencies) {
+      this.url = url;
+      categoricalValues = new ArrayList <List <String> > ();
+      for(int i = 0; i < classifier.getCategoricalInputCount(); i++) {
+        categoricalValues.add(classifier.getCategoricalValues(i));
+      }
+      continuousInputs = classifier.getContinuousInputCount();
+      this.random = new Random(seed);
+      this.latencies = latencies;
+    }
+
+    public void run() {
+      byte[] buffer = new byte[4096];
+      try {
+        while(running) {
+          StringBuilder body = new StringBuilder();
+          for(List <String> values : categoricalValues) {
+            body.append(values.get(random.nextInt(values.size()))).append(',');
+          }
+          for(int i = 0; i < continuousInputs; i++) {
+            body.append(random.nextDouble()).append(',');
+          }
+          body.setLength(body.length() - 1);
+          byte[] bytes = body.toString().getBytes("US-ASCII");
+
+          long start = System.nanoTime();
+          HttpURLConnection connection =
+              (HttpURLConnection) url.openConnection();
+          connection.setRequestMethod("POST");
+          connection.setDoOutput(true);
+          connection.setFixedLengthStreamingMode(bytes.length);
+          OutputStream out = connection.getOutputStream();
+          out.write(bytes);
+          out.close();
+          if(connection.getResponseCode() != 200) {
+            throw new IOException(
+                "Scoring failed: " + connection.getResponseCode());
+          }
+          InputStream in = connection.getInputStream();
+          while(in.read(buffer) != -1) {
+            // Only the latency is measured, so the classes are dropped.
+          }
+          in.close();
+          latencies.record(System.nanoTime() - start);
+        }
+      }
+      catch(IOException e) {
+        failure = e;
+      }
+    }
+  }
+}
@@ -1,5 +1,6 @@
 package naivebayes.experiments;
 
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 
@@ -12,11 +13,15 @@ import java.util.Scanner;
 import naivebayes.CategoricalAttribute;
 import naivebayes.ContinuousAttribute;
 import naivebayes.Example;
+import naivebayes.LearningCurve;
 import naivebayes.NaiveBayesClassifier;
+import naivebayes.Scorer;
 
 public class WineExperiment {
 
   private static final String DEFAULT_DATA_FILE = "wine.data";
+  private static final int DEFAULT_CURVE_START = 1;
+  private static final int DEFAULT_CURVE_STEP = 0;
   private static final int DEFAULT_TRAINING_EXAMPLES = 100;
 
   private static final int INPUTS = 13;
@@ -24,6 +29,10 @@ public class WineExperiment {
   public static void main(String[] args) {
     String dataFile = DEFAULT_DATA_FILE;
     int trainingExamples = DEFAULT_TRAINING_EXAMPLES;
+    int curveStart = DEFAULT_CURVE_START;
+    int curveEnd = DEFAULT_TRAINING_EXAMPLES;
+    int curveStep = DEFAULT_CURVE_STEP;
+    String modelFile = null;
     for(int i = 0; i + 1 < args.length; i += 2) {
       if(args[i].equals("-f")) {
         dataFile = args[i + 1];
@@ -31,6 +40,18 @@ public class WineExperiment {
       else if(args[i].equals("-e")) {
         trainingExamples = Integer.parseInt(args[i + 1]);
       }
+      else if(args[i].equals("-start")) {
+        curveStart = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-end")) {
+        curveEnd = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-step")) {
+        curveStep = Integer.parseInt(args[i + 1]);
+      }
+      else if(args[i].equals("-o")) {
+        modelFile = args[i + 1];
+      }
     }
 
     List <Example> all = readFile(dataFile);
@@ -47,14 +68,62 @@ public class WineExperiment {
     for(int i = DEFAULT_TRAINING_EXAMPLES; i < all.size(); i++) {
       validationSet.add(all.get(i));
     }
-    System.out.println(testClassifier(examples, validationSet));
+    if(curveStep > 0) {
+      learningCurve(
+          all.subList(0, Math.min(curveEnd, DEFAULT_TRAINING_EXAMPLES)),
+          validationSet,
+          curveStart,
+          curveStep);
+      return;
+    }
+    System.out.println(testClassifier(examples, modelFile, validationSet));
+  }
+
+  private static void learningCurve(List <Example> examples,
+                                    List <Example> validationSet,
+                                    int start,
+                                    int step) {
+    int[] sizes = new int[Math.max(0, (examples.size() - start) / step + 1)];
+    for(int i = 0; i < sizes.length; i++) {
+      sizes[i] = start + i * step;
+    }
+
+    LearningCurve curve = new LearningCurve(
+        examples,
+        validationSet,
+        new Scorer() {
+          public double score(NaiveBayesClassifier classifier,
+                              List <Example> validationSet) {
+            return accuracy(classifier, validationSet);
+          }
+        },
+        Runtime.getRuntime().availableProcessors());
+    double[] percents = curve.compute(sizes);
+
+    System.out.println("examples,percent");
+    for(int i = 0; i < sizes.length; i++) {
+      System.out.println(String.format("%d,%.4f", sizes[i], percents[i]));
+    }
   }
 
   private static double testClassifier(List <Example> examples,
+                                       String modelFile,
                                        List <Example> validationSet) {
 
     NaiveBayesClassifier classifier = new NaiveBayesClassifier(examples);
+    if(modelFile != null) {
+      try {
+        classifier.save(new File(modelFile));
+      }
+      catch(IOException e) {
+        e.printStackTrace();
+      }
+    }
+    return accuracy(classifier, validationSet);
+  }
 
+  private static double accuracy(NaiveBayesClassifier classifier,
+                                 List <Example> validationSet) {
     int correct = 0;
     for(Example example : validationSet) {
       String output = classifier.classify(